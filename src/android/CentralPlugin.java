@@ -1,7 +1,15 @@
 package com.ksachdeva.opensource.ble.central;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.cordova.*;
 import org.json.JSONArray;
@@ -15,9 +23,6 @@ import android.support.v4.util.Pair;
 import android.util.Base64;
 
 import com.polidea.rxandroidble.RxBleClient;
-import com.polidea.rxandroidble.RxBleConnection;
-import com.polidea.rxandroidble.RxBleScanResult;
-import com.polidea.rxandroidble.RxBleDevice;
 import com.polidea.rxandroidble.RxBleDeviceServices;
 import com.polidea.rxandroidble.internal.RxBleLog;
 import com.polidea.rxandroidble.exceptions.BleCharacteristicNotFoundException;
@@ -27,14 +32,42 @@ import rx.Observable;
 import rx.Subscription;
 import rx.functions.Action0;
 import rx.functions.Action1;
+import rx.functions.Func0;
 import rx.functions.Func1;
 import rx.functions.Func2;
+import rx.subscriptions.CompositeSubscription;
+import rx.subscriptions.Subscriptions;
 
+import com.ksachdeva.opensource.ble.central.utils.BatchCallbackContext;
+import com.ksachdeva.opensource.ble.central.utils.ConnectionOptions;
 import com.ksachdeva.opensource.ble.central.utils.DisposableMap;
+import com.ksachdeva.opensource.ble.central.utils.JsonPluginResult;
+import com.ksachdeva.opensource.ble.central.utils.JsonWriter;
+import com.ksachdeva.opensource.ble.central.utils.NotificationBuffer;
+import com.ksachdeva.opensource.ble.central.utils.ScanDeduplicator;
+import com.ksachdeva.opensource.ble.central.utils.ScanFilter;
+import com.ksachdeva.opensource.ble.central.utils.AdvertisementCache;
+import com.ksachdeva.opensource.ble.central.utils.DiscoveredDevices;
+import com.ksachdeva.opensource.ble.central.utils.DiscoveryQuery;
+import com.ksachdeva.opensource.ble.central.utils.ScanOptions;
+import com.ksachdeva.opensource.ble.central.utils.TransactionOptions;
 import com.ksachdeva.opensource.ble.central.utils.UUIDConverter;
+import com.ksachdeva.opensource.ble.central.session.DeviceSession;
+import com.ksachdeva.opensource.ble.central.session.DeviceSessionRegistry;
+import com.ksachdeva.opensource.ble.central.session.GattAttributeCache;
+import com.ksachdeva.opensource.ble.central.session.OperationQueue;
+import com.ksachdeva.opensource.ble.central.session.OperationScheduler;
+import com.ksachdeva.opensource.ble.central.metrics.PluginMetrics;
+import com.ksachdeva.opensource.ble.central.metrics.TimedCallbackContext;
+import com.ksachdeva.opensource.ble.central.errors.Error;
 import com.ksachdeva.opensource.ble.central.errors.ErrorConverter;
 import com.ksachdeva.opensource.ble.central.errors.BleError;
 import com.ksachdeva.opensource.ble.central.converters.RxBleScanResultConverter;
+import com.ksachdeva.opensource.ble.central.backend.BleBackend;
+import com.ksachdeva.opensource.ble.central.backend.BleConnection;
+import com.ksachdeva.opensource.ble.central.backend.BleDevice;
+import com.ksachdeva.opensource.ble.central.backend.BleScanResult;
+import com.ksachdeva.opensource.ble.central.backend.RxBleBackend;
 import com.ksachdeva.opensource.ble.central.converters.RxBleDeviceConverter;
 import com.ksachdeva.opensource.ble.central.converters.BluetoothGattCharacteristicConverter;
 import com.ksachdeva.opensource.ble.central.converters.BluetoothGattServiceConverter;
@@ -43,16 +76,34 @@ public class CentralPlugin extends CordovaPlugin {
 
   private static final String TAG = "CentralPlugin";
 
-  private RxBleClient rxBleClient;
-  private HashMap<String, RxBleConnection> connectionMap = new HashMap<String, RxBleConnection>();
-  private final HashMap<String, String> notificationMap = new HashMap<String, String>();
+  // size of the header of a write request
+  private static final int ATT_WRITE_HEADER_SIZE = 3;
 
-  private Subscription scanSubscription;
-  private final DisposableMap transactions = new DisposableMap();
+  private interface PluginAction {
+      void execute(JSONArray args, CallbackContext callbackContext) throws JSONException;
+  }
+
+  // dispatch table of the actions, looked up by execute and executeBatch
+  private final Map<String, PluginAction> actions = createActions();
+
+  // given to the constructor, null for the Android Bluetooth stack
+  private final BleBackend providedBackend;
+  private BleBackend backend;
+  private final PluginMetrics metrics = new PluginMetrics();
+  private final OperationScheduler scheduler = new OperationScheduler(metrics.getQueueWait(), metrics.getGatt());
+  private final DeviceSessionRegistry sessions = new DeviceSessionRegistry(scheduler);
+
+  private volatile Subscription scanSubscription;
+  private volatile Subscription metricsSubscription;
   private final DisposableMap connectingDevices = new DisposableMap();
+  private final AdvertisementCache advertisements = new AdvertisementCache();
+  private final DiscoveredDevices discoveredDevices = new DiscoveredDevices(advertisements);
+
+  // timeout of the transactions that do not give one, 0 for none
+  private volatile long defaultTimeoutMs;
 
   // various callback context
-  private CallbackContext monitorDeviceDisconnectCallbackContext;
+  private volatile CallbackContext monitorDeviceDisconnectCallbackContext;
 
   private RxBleScanResultConverter scanResult = new RxBleScanResultConverter();
   private ErrorConverter errorConverter = new ErrorConverter();
@@ -60,6 +111,18 @@ public class CentralPlugin extends CordovaPlugin {
   private BluetoothGattServiceConverter serviceConverter = new BluetoothGattServiceConverter();
   private BluetoothGattCharacteristicConverter characteristicConverter = new BluetoothGattCharacteristicConverter();
 
+  public CentralPlugin() {
+      this(null);
+  }
+
+  /**
+   * @param backend replaces the Android Bluetooth stack, e.g. by a SimulatedBackend
+   */
+  public CentralPlugin(BleBackend backend) {
+      this.providedBackend = backend;
+      this.backend = backend;
+  }
+
   @Override
   protected void pluginInitialize() {
       super.pluginInitialize();
@@ -68,52 +131,164 @@ public class CentralPlugin extends CordovaPlugin {
       RxBleClient.setLogLevel(RxBleLog.DEBUG);
   }
 
+  private Map<String, PluginAction> createActions() {
+      Map<String, PluginAction> actions = new HashMap<String, PluginAction>();
+      actions.put("startDeviceScan", new PluginAction() {
+          @Override
+          public void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+              startDeviceScan(args, callbackContext);
+          }
+      });
+      actions.put("stopScan", new PluginAction() {
+          @Override
+          public void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+              stopScan(callbackContext);
+          }
+      });
+      actions.put("connectToDevice", new PluginAction() {
+          @Override
+          public void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+              connectToDevice(args, callbackContext);
+          }
+      });
+      actions.put("monitorDeviceDisconnect", new PluginAction() {
+          @Override
+          public void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+              monitorDeviceDisconnect(args, callbackContext);
+          }
+      });
+      actions.put("disconnectDevice", new PluginAction() {
+          @Override
+          public void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+              disconnectDevice(args, callbackContext);
+          }
+      });
+      actions.put("isDeviceConnected", new PluginAction() {
+          @Override
+          public void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+              isDeviceConnected(args, callbackContext);
+          }
+      });
+      actions.put("discoverServices", new PluginAction() {
+          @Override
+          public void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+              discoverServices(args, callbackContext);
+          }
+      });
+      actions.put("discoverCharacteristics", new PluginAction() {
+          @Override
+          public void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+              discoverCharacteristics(args, callbackContext);
+          }
+      });
+      actions.put("monitorCharacteristic", new PluginAction() {
+          @Override
+          public void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+              monitorCharacteristic(args, callbackContext);
+          }
+      });
+      actions.put("cancelTransaction", new PluginAction() {
+          @Override
+          public void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+              cancelTransaction(args, callbackContext);
+          }
+      });
+      actions.put("readCharacteristic", new PluginAction() {
+          @Override
+          public void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+              readCharacteristic(args, callbackContext);
+          }
+      });
+      actions.put("readCharacteristics", new PluginAction() {
+          @Override
+          public void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+              readCharacteristics(args, callbackContext);
+          }
+      });
+      actions.put("writeCharacteristic", new PluginAction() {
+          @Override
+          public void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+              writeCharacteristic(args, callbackContext);
+          }
+      });
+      actions.put("writeCharacteristicLong", new PluginAction() {
+          @Override
+          public void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+              writeCharacteristicLong(args, callbackContext);
+          }
+      });
+      actions.put("requestMtu", new PluginAction() {
+          @Override
+          public void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+              requestMtu(args, callbackContext);
+          }
+      });
+      actions.put("getMtu", new PluginAction() {
+          @Override
+          public void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+              getMtu(args, callbackContext);
+          }
+      });
+      actions.put("requestConnectionPriority", new PluginAction() {
+          @Override
+          public void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+              requestConnectionPriority(args, callbackContext);
+          }
+      });
+      actions.put("getOperationQueues", new PluginAction() {
+          @Override
+          public void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+              getOperationQueues(callbackContext);
+          }
+      });
+      actions.put("getMetrics", new PluginAction() {
+          @Override
+          public void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+              getMetrics(args, callbackContext);
+          }
+      });
+      actions.put("setTransactionTimeout", new PluginAction() {
+          @Override
+          public void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+              setTransactionTimeout(args, callbackContext);
+          }
+      });
+      actions.put("getDiscoveredDevices", new PluginAction() {
+          @Override
+          public void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+              getDiscoveredDevices(args, callbackContext);
+          }
+      });
+      actions.put("executeBatch", new PluginAction() {
+          @Override
+          public void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+              executeBatch(args, callbackContext);
+          }
+      });
+      return actions;
+  }
+
   @Override
   public boolean execute(String action, final JSONArray args, final CallbackContext callbackContext) throws JSONException {
-
-    if (action.equals("startDeviceScan")) {
-        startDeviceScan(args, callbackContext);
-        return true;
-    } else if (action.equals("stopScan")) {
-        stopScan(callbackContext);
-        return true;
-    } else if (action.equals("connectToDevice")) {
-        connectToDevice(args, callbackContext);
-        return true;
-    } else if (action.equals("monitorDeviceDisconnect")) {
-        monitorDeviceDisconnect(args, callbackContext);
-        return true;
-    } else if (action.equals("disconnectDevice")) {
-        disconnectDevice(args, callbackContext);
-        return true;
-    } else if (action.equals("isDeviceConnected")) {
-        isDeviceConnected(args, callbackContext);
-        return true;
-    } else if (action.equals("discoverServices")) {
-        discoverServices(args, callbackContext);
-        return true;
-    } else if (action.equals("discoverCharacteristics")) {
-        discoverCharacteristics(args, callbackContext);
-        return true;
-    } else if (action.equals("monitorCharacteristic")) {
-        monitorCharacteristic(args, callbackContext);
-        return true;
-    } else if (action.equals("cancelTransaction")) {
-        cancelTransaction(args, callbackContext);
-        return true;
-    } else if (action.equals("readCharacteristic")) {
-        readCharacteristic(args, callbackContext);
-        return true;
-    } else if (action.equals("writeCharacteristic")) {
-        writeCharacteristic(args, callbackContext);
-        return true;
+    final PluginAction pluginAction = actions.get(action);
+    if (pluginAction == null) {
+        return false;
     }
 
-    return false;
+    // records the latency of the action up to its first result
+    pluginAction.execute(args, new TimedCallbackContext(callbackContext, metrics, action));
+    return true;
+  }
+
+  @Override
+  public void onDestroy() {
+      destroyClient();
+      scheduler.shutdown();
+      super.onDestroy();
   }
 
   private void createClient() {
-      rxBleClient = RxBleClient.create(this.getApplicationContext());
+      backend = providedBackend != null ? providedBackend : new RxBleBackend(this.getApplicationContext());
   }
 
   private void destroyClient() {
@@ -122,22 +297,136 @@ public class CentralPlugin extends CordovaPlugin {
           scanSubscription = null;
       }
 
-      transactions.removeAllSubscriptions();
+      if (metricsSubscription != null) {
+          metricsSubscription.unsubscribe();
+          metricsSubscription = null;
+      }
+
       connectingDevices.removeAllSubscriptions();
 
-      // Clear all data structures
-      connectionMap.clear();
-      notificationMap.clear();
+      // Clear all data structures, closing a session unsubscribes its transactions
+      sessions.clear();
+      advertisements.clear();
+      discoveredDevices.clear();
+
+      backend = null;
+  }
 
-      rxBleClient = null;
+  private void setTransactionTimeout(final JSONArray args, final CallbackContext callbackContext) throws JSONException {
+      defaultTimeoutMs = Math.max(0, args.getLong(0));
+      callbackContext.success();
   }
 
   private void cancelTransaction(final JSONArray args, final CallbackContext callbackContext) throws JSONException {
       final String transactionId = args.getString(0);
-      transactions.removeSubscription(transactionId);
+      removeTransaction(transactionId);
       callbackContext.success();
   }
 
+  // The transactions are kept by the session of their device, so that they end with its
+  // connection: a transaction still running when the session closes is rejected with
+  // deviceNotConnected. A transaction id stays unique across the devices though.
+  // The transaction is registered before its chain is subscribed, the chain may already
+  // terminate during subscribe.
+  private DeviceSession.Transaction beginTransaction(final DeviceSession session,
+                                                    String transactionId,
+                                                    final CallbackContext callbackContext) {
+      for (DeviceSession other : sessions.getAll()) {
+          if (other != session) {
+              other.removeTransaction(transactionId);
+          }
+      }
+      return session.beginTransaction(transactionId, new Action0() {
+          @Override
+          public void call() {
+              sendError(callbackContext, BleError.deviceNotConnected(session.getDeviceId()).toJS(), false);
+          }
+      });
+  }
+
+  private void removeTransaction(String transactionId) {
+      for (DeviceSession session : sessions.getAll()) {
+          session.removeTransaction(transactionId);
+      }
+  }
+
+  private int getTransactionCount() {
+      int count = 0;
+      for (DeviceSession session : sessions.getAll()) {
+          count += session.getTransactionCount();
+      }
+      return count;
+  }
+
+  // args: [[{ id, action, args }], { sequential }]
+  // The results of every command come back on the callback of the batch, see
+  // BatchCallbackContext. In sequential mode a command is only started once the previous
+  // one sent its first result, the commands following a failed one are cancelled.
+  // monitorDeviceDisconnect only answers on a disconnection, it is rejected in that mode.
+  private void executeBatch(final JSONArray args, final CallbackContext callbackContext) throws JSONException {
+      final JSONArray commands = args.getJSONArray(0);
+      final JSONObject batchOptions = args.optJSONObject(1);
+      final boolean sequential = batchOptions != null && batchOptions.optBoolean("sequential", false);
+
+      if (commands.length() == 0) {
+          sendSuccess(callbackContext, new JSONArray(), false);
+          return;
+      }
+
+      final AtomicInteger pendingCommands = new AtomicInteger(commands.length());
+      final List<BatchCallbackContext> callbackContexts = new ArrayList<BatchCallbackContext>(commands.length());
+
+      for (int i = 0; i < commands.length(); i++) {
+          final int next = i + 1;
+          final JSONObject command = commands.getJSONObject(i);
+          callbackContexts.add(new BatchCallbackContext(
+                  callbackContext,
+                  command.optString("id", String.valueOf(i)),
+                  pendingCommands,
+                  !sequential ? null : new Action1<Boolean>() {
+                      @Override
+                      public void call(Boolean ok) {
+                          if (ok) {
+                              executeBatchCommands(commands, callbackContexts, next, true);
+                          } else {
+                              for (int j = next; j < callbackContexts.size(); j++) {
+                                  sendError(callbackContexts.get(j), BleError.cancelled().toJS(), false);
+                              }
+                          }
+                      }
+                  }));
+      }
+
+      executeBatchCommands(commands, callbackContexts, 0, sequential);
+  }
+
+  private void executeBatchCommands(JSONArray commands,
+                                    List<BatchCallbackContext> callbackContexts,
+                                    int from,
+                                    boolean sequential) {
+      int to = sequential ? Math.min(from + 1, commands.length()) : commands.length();
+      for (int i = from; i < to; i++) {
+          JSONObject command = commands.optJSONObject(i);
+          String action = command.optString("action");
+          CallbackContext commandCallbackContext = callbackContexts.get(i);
+
+          PluginAction pluginAction = actions.get(action);
+          if (pluginAction == null || "executeBatch".equals(action) ||
+                  (sequential && "monitorDeviceDisconnect".equals(action))) {
+              sendError(commandCallbackContext, BleError.invalidAction(action).toJS(), false);
+              continue;
+          }
+
+          JSONArray commandArgs = command.optJSONArray("args");
+          try {
+              pluginAction.execute(commandArgs != null ? commandArgs : new JSONArray(),
+                      new TimedCallbackContext(commandCallbackContext, metrics, action));
+          } catch (JSONException jsonEx) {
+              sendError(commandCallbackContext, BleError.invalidArguments(action).toJS(), false);
+          }
+      }
+  }
+
   private void writeCharacteristic(final JSONArray args, final CallbackContext callbackContext) throws JSONException {
       final String deviceId = args.getString(0);
       final String serviceUUIDStr = args.getString(1);
@@ -145,19 +434,21 @@ public class CentralPlugin extends CordovaPlugin {
       final String valueBase64 = args.getString(3);
       final boolean response = args.getBoolean(4);
       final String transactionId = args.getString(5);
+      final TransactionOptions options = TransactionOptions.fromJS(args.optJSONObject(6));
 
-      final RxBleDevice device = rxBleClient.getBleDevice(deviceId);
+      final BleDevice device = backend.getBleDevice(deviceId);
 
       if (device == null) {
           sendError(callbackContext, BleError.deviceNotFound(deviceId).toJS(), false);
           return;
       }
 
-      final RxBleConnection rxBleConnection = connectionMap.get(deviceId);
-      if (rxBleConnection == null) {
+      final DeviceSession session = sessions.getConnected(deviceId);
+      if (session == null) {
           sendError(callbackContext, BleError.deviceNotConnected(deviceId).toJS(), false);
           return;
       }
+      final BleConnection rxBleConnection = session.getConnection();
 
       final UUID[] UUIDs = UUIDConverter.convert(serviceUUIDStr, charUUIDStr);
       if (UUIDs == null) {
@@ -176,93 +467,224 @@ public class CentralPlugin extends CordovaPlugin {
       final UUID serviceUUID = UUIDs[0];
       final UUID charUUID = UUIDs[1];
 
-      cordova.getThreadPool().execute(new Runnable() {
-          public void run() {
+      final DeviceSession.Transaction transaction = beginTransaction(session, transactionId, callbackContext);
+      final Subscription subscription = withTimeout(session.getOperations().enqueue(getCharacteristic(session, serviceUUID, charUUID)
+              .flatMap(new Func1<BluetoothGattCharacteristic, Observable<byte[]>>() {
+                  @Override
+                  public Observable<byte[]> call(BluetoothGattCharacteristic bluetoothGattCharacteristic) {
+                      bluetoothGattCharacteristic.setWriteType(
+                              response ?
+                                      BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT :
+                                      BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+                      metrics.onBytesOut(value.length);
+                      return rxBleConnection.writeCharacteristic(bluetoothGattCharacteristic, value);
+                  }
+              }, new Func2<BluetoothGattCharacteristic, byte[], Pair<BluetoothGattCharacteristic, byte[]>>() {
+                  @Override
+                  public Pair<BluetoothGattCharacteristic, byte[]> call(BluetoothGattCharacteristic bluetoothGattCharacteristic, byte[] bytes) {
+                      return new Pair<BluetoothGattCharacteristic, byte[]>(bluetoothGattCharacteristic, bytes);
+                  }
+              }), options.getPriority()), options.getTimeoutMs(defaultTimeoutMs))
+              .doOnUnsubscribe(new Action0() {
+                  @Override
+                  public void call() {
+                      // BleError.cancelled().reject(promise);
+                      session.endTransaction(transaction);
+                  }
+              })
+              .subscribe(new Observer<Pair<BluetoothGattCharacteristic, byte[]>>() {
+                  @Override
+                  public void onCompleted() {
+                      session.endTransaction(transaction);
+                  }
+
+                  @Override
+                  public void onError(Throwable e) {
+                      if (e instanceof BleCharacteristicNotFoundException) {
+                          sendError(callbackContext, BleError.characteristicNotFound(UUIDConverter.fromUUID(charUUID)).toJS(), false);
+                          return;
+                      }
+                      sendError(callbackContext, errorConverter.toError(e).toJS(), false);
+                      session.endTransaction(transaction);
+                  }
+
+                  @Override
+                  public void onNext(Pair<BluetoothGattCharacteristic, byte[]> result) {
+                      sendCharacteristic(callbackContext, deviceId, serviceUUID, result.first, result.second, options.isBinary());
+                  }
+              });
+
+      transaction.setSubscription(subscription);
+  }
 
-              final Subscription subscription = rxBleConnection.discoverServices()
-                      .flatMap(new Func1<RxBleDeviceServices, Observable<BluetoothGattCharacteristic>>() {
-                          @Override
-                          public Observable<BluetoothGattCharacteristic> call(RxBleDeviceServices rxBleDeviceServices) {
-                              return rxBleDeviceServices.getCharacteristic(serviceUUID, charUUID);
-                          }
-                      })
-                      .flatMap(new Func1<BluetoothGattCharacteristic, Observable<byte[]>>() {
-                          @Override
-                          public Observable<byte[]> call(BluetoothGattCharacteristic bluetoothGattCharacteristic) {
-                              bluetoothGattCharacteristic.setWriteType(
-                                      response ?
-                                              BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT :
-                                              BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
-                              return rxBleConnection.writeCharacteristic(bluetoothGattCharacteristic, value);
-                          }
-                      }, new Func2<BluetoothGattCharacteristic, byte[], Pair<BluetoothGattCharacteristic, byte[]>>() {
-                          @Override
-                          public Pair<BluetoothGattCharacteristic, byte[]> call(BluetoothGattCharacteristic bluetoothGattCharacteristic, byte[] bytes) {
-                              return new Pair<BluetoothGattCharacteristic, byte[]>(bluetoothGattCharacteristic, bytes);
-                          }
-                      })
-                      .doOnUnsubscribe(new Action0() {
-                          @Override
-                          public void call() {
-                              // BleError.cancelled().reject(promise);
-                              transactions.removeSubscription(transactionId);
-                          }
-                      })
-                      .subscribe(new Observer<Pair<BluetoothGattCharacteristic, byte[]>>() {
-                          @Override
-                          public void onCompleted() {
-                              transactions.removeSubscription(transactionId);
-                          }
+  private void writeCharacteristicLong(final JSONArray args, final CallbackContext callbackContext) throws JSONException {
+      final String deviceId = args.getString(0);
+      final String serviceUUIDStr = args.getString(1);
+      final String charUUIDStr = args.getString(2);
+      final String valueBase64 = args.getString(3);
+      final boolean response = args.getBoolean(4);
+      final String transactionId = args.getString(5);
+      final TransactionOptions options = TransactionOptions.fromJS(args.optJSONObject(6));
 
-                          @Override
-                          public void onError(Throwable e) {
-                              if (e instanceof BleCharacteristicNotFoundException) {
-                                  sendError(callbackContext, BleError.characteristicNotFound(UUIDConverter.fromUUID(charUUID)).toJS(), false);
-                                  return;
-                              }
-                              sendError(callbackContext, errorConverter.toError(e).toJS(), false);
-                              transactions.removeSubscription(transactionId);
-                          }
+      final BleDevice device = backend.getBleDevice(deviceId);
 
-                          @Override
-                          public void onNext(Pair<BluetoothGattCharacteristic, byte[]> result) {
-                              try {
-                                  JSONObject jsObject = characteristicConverter.toJSObject(result.first);
-                                  jsObject.put("deviceUUID", deviceId);
-                                  jsObject.put("serviceUUID", serviceUUID);
-                                  jsObject.put("value", Base64.encodeToString(result.second, Base64.DEFAULT));
-                                  sendSuccess(callbackContext, jsObject, false);
-                              } catch(JSONException jsonEx) {
-                                  // ignored !!
-                              }
-                          }
-                      });
+      if (device == null) {
+          sendError(callbackContext, BleError.deviceNotFound(deviceId).toJS(), false);
+          return;
+      }
 
-              transactions.replaceSubscription(transactionId, subscription);
+      final DeviceSession session = sessions.getConnected(deviceId);
+      if (session == null) {
+          sendError(callbackContext, BleError.deviceNotConnected(deviceId).toJS(), false);
+          return;
+      }
+      final BleConnection rxBleConnection = session.getConnection();
 
-          }
-      });
-  }
+      final UUID[] UUIDs = UUIDConverter.convert(serviceUUIDStr, charUUIDStr);
+      if (UUIDs == null) {
+          sendError(callbackContext, BleError.invalidUUIDs(serviceUUIDStr, charUUIDStr).toJS(), false);
+          return;
+      }
+
+      final byte[] value;
+      try {
+          value = Base64.decode(valueBase64, Base64.DEFAULT);
+      } catch (Throwable e) {
+          sendError(callbackContext, BleError.invalidWriteDataForCharacteristic(valueBase64, charUUIDStr).toJS(), false);
+          return;
+      }
 
+      final UUID serviceUUID = UUIDs[0];
+      final UUID charUUID = UUIDs[1];
+
+      final int chunkSize = options.getChunkSize() > 0 ? options.getChunkSize() : session.getMtu() - ATT_WRITE_HEADER_SIZE;
+      final int chunkCount = (value.length + chunkSize - 1) / chunkSize;
+
+      final OperationQueue operations = session.getOperations();
+
+      // every chunk is a queued operation of its own so that the other operations of
+      // the device can interleave with a long write instead of waiting for all of it
+      // the timeout applies to every chunk, a long transfer only fails once it stalls
+      final DeviceSession.Transaction transaction = beginTransaction(session, transactionId, callbackContext);
+      final Subscription subscription = withTimeout(operations.enqueue(getCharacteristic(session, serviceUUID, charUUID), options.getPriority())
+              .flatMap(new Func1<BluetoothGattCharacteristic, Observable<Integer>>() {
+                  @Override
+                  public Observable<Integer> call(final BluetoothGattCharacteristic bluetoothGattCharacteristic) {
+                      bluetoothGattCharacteristic.setWriteType(
+                              response ?
+                                      BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT :
+                                      BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+
+                      // one chunk at a time, the next write only starts once the stack
+                      // reported the previous one as written
+                      return Observable.range(0, chunkCount)
+                              .concatMap(new Func1<Integer, Observable<Integer>>() {
+                                  @Override
+                                  public Observable<Integer> call(Integer index) {
+                                      final int from = index * chunkSize;
+                                      final int to = Math.min(from + chunkSize, value.length);
+                                      return operations.enqueue(rxBleConnection
+                                              .writeCharacteristic(bluetoothGattCharacteristic, Arrays.copyOfRange(value, from, to)), options.getPriority())
+                                              .map(new Func1<byte[], Integer>() {
+                                                  @Override
+                                                  public Integer call(byte[] bytes) {
+                                                      metrics.onBytesOut(bytes.length);
+                                                      return to;
+                                                  }
+                                              });
+                                  }
+                              });
+                  }
+              }, new Func2<BluetoothGattCharacteristic, Integer, Pair<BluetoothGattCharacteristic, Integer>>() {
+                  @Override
+                  public Pair<BluetoothGattCharacteristic, Integer> call(BluetoothGattCharacteristic bluetoothGattCharacteristic, Integer bytesWritten) {
+                      return new Pair<BluetoothGattCharacteristic, Integer>(bluetoothGattCharacteristic, bytesWritten);
+                  }
+              }), options.getTimeoutMs(defaultTimeoutMs))
+              .doOnUnsubscribe(new Action0() {
+                  @Override
+                  public void call() {
+                      session.endTransaction(transaction);
+                  }
+              })
+              .subscribe(new Observer<Pair<BluetoothGattCharacteristic, Integer>>() {
+                  private BluetoothGattCharacteristic characteristic;
+                  private int lastPercent = -1;
+
+                  @Override
+                  public void onCompleted() {
+                      session.endTransaction(transaction);
+
+                      try {
+                          JSONObject jsObject = characteristic != null ?
+                                  characteristicConverter.toMetadataJSObject(characteristic) :
+                                  new JSONObject();
+                          jsObject.put("deviceUUID", deviceId);
+                          jsObject.put("serviceUUID", UUIDConverter.fromUUID(serviceUUID));
+                          jsObject.put("bytesWritten", value.length);
+                          sendSuccess(callbackContext, jsObject, false);
+                      } catch (JSONException jsonEx) {
+                          // ignored !!
+                      }
+                  }
+
+                  @Override
+                  public void onError(Throwable e) {
+                      session.endTransaction(transaction);
+                      if (e instanceof BleCharacteristicNotFoundException) {
+                          sendError(callbackContext, BleError.characteristicNotFound(UUIDConverter.fromUUID(charUUID)).toJS(), false);
+                          return;
+                      }
+                      sendError(callbackContext, errorConverter.toError(e).toJS(), false);
+                  }
+
+                  @Override
+                  public void onNext(Pair<BluetoothGattCharacteristic, Integer> result) {
+                      characteristic = result.first;
+
+                      // progress is reported at most once per percent
+                      int percent = (int) (result.second * 100L / value.length);
+                      if (percent == lastPercent) {
+                          return;
+                      }
+                      lastPercent = percent;
+
+                      try {
+                          JSONObject progress = new JSONObject();
+                          progress.put("bytesWritten", (int) result.second);
+                          progress.put("totalBytes", value.length);
+                          JSONObject jsObject = new JSONObject();
+                          jsObject.put("progress", progress);
+                          sendSuccess(callbackContext, jsObject, true);
+                      } catch (JSONException jsonEx) {
+                          // ignored !!
+                      }
+                  }
+              });
+
+      transaction.setSubscription(subscription);
+  }
 
   private void readCharacteristic(final JSONArray args, final CallbackContext callbackContext) throws JSONException {
       final String deviceId = args.getString(0);
       final String serviceUUIDStr = args.getString(1);
       final String charUUIDStr = args.getString(2);
       final String transactionId = args.getString(3);
+      final TransactionOptions options = TransactionOptions.fromJS(args.optJSONObject(4));
 
-      final RxBleDevice device = rxBleClient.getBleDevice(deviceId);
+      final BleDevice device = backend.getBleDevice(deviceId);
 
       if (device == null) {
           sendError(callbackContext, BleError.deviceNotFound(deviceId).toJS(), false);
           return;
       }
 
-      final RxBleConnection rxBleConnection = connectionMap.get(deviceId);
-      if (rxBleConnection == null) {
+      final DeviceSession session = sessions.getConnected(deviceId);
+      if (session == null) {
           sendError(callbackContext, BleError.deviceNotConnected(deviceId).toJS(), false);
           return;
       }
+      final BleConnection rxBleConnection = session.getConnection();
 
       final UUID[] UUIDs = UUIDConverter.convert(serviceUUIDStr, charUUIDStr);
       if (UUIDs == null) {
@@ -273,65 +695,172 @@ public class CentralPlugin extends CordovaPlugin {
       final UUID serviceUUID = UUIDs[0];
       final UUID charUUID = UUIDs[1];
 
-      cordova.getThreadPool().execute(new Runnable() {
-          public void run() {
+      final DeviceSession.Transaction transaction = beginTransaction(session, transactionId, callbackContext);
+      final Subscription subscription = withTimeout(session.getOperations().enqueue(getCharacteristic(session, serviceUUID, charUUID)
+              .flatMap(new Func1<BluetoothGattCharacteristic, Observable<byte[]>>() {
+                  @Override
+                  public Observable<byte[]> call(BluetoothGattCharacteristic bluetoothGattCharacteristic) {
+                      return rxBleConnection.readCharacteristic(bluetoothGattCharacteristic);
+                  }
+              }, new Func2<BluetoothGattCharacteristic, byte[], Pair<BluetoothGattCharacteristic, byte[]>>() {
+                  @Override
+                  public Pair<BluetoothGattCharacteristic, byte[]> call(BluetoothGattCharacteristic bluetoothGattCharacteristic, byte[] bytes) {
+                      return new Pair<BluetoothGattCharacteristic, byte[]>(bluetoothGattCharacteristic, bytes);
+                  }
+              }), options.getPriority()), options.getTimeoutMs(defaultTimeoutMs))
+              .doOnUnsubscribe(new Action0() {
+                  @Override
+                  public void call() {
+                      session.endTransaction(transaction);
+                      // sendError(callbackContext, BleError.cancelled().toJS(), false);
+                  }
+              })
+              .subscribe(new Observer<Pair<BluetoothGattCharacteristic, byte[]>>() {
+                  @Override
+                  public void onCompleted() {
+                      session.endTransaction(transaction);
+                  }
+
+                  @Override
+                  public void onError(Throwable e) {
+                      session.endTransaction(transaction);
+                      sendError(callbackContext, errorConverter.toError(e).toJS(), false);
+                  }
+
+                  @Override
+                  public void onNext(Pair<BluetoothGattCharacteristic, byte[]> result) {
+                      metrics.onBytesIn(result.second.length);
+                      sendCharacteristic(callbackContext, deviceId, serviceUUID, result.first, result.second, options.isBinary());
+                  }
+              });
+
+      transaction.setSubscription(subscription);
 
-              final Subscription subscription = rxBleConnection.discoverServices()
-                      .flatMap(new Func1<RxBleDeviceServices, Observable<BluetoothGattCharacteristic>>() {
-                          @Override
-                          public Observable<BluetoothGattCharacteristic> call(RxBleDeviceServices rxBleDeviceServices) {
-                              return rxBleDeviceServices.getCharacteristic(serviceUUID, charUUID);
-                          }
-                      })
-                      .flatMap(new Func1<BluetoothGattCharacteristic, Observable<byte[]>>() {
-                          @Override
-                          public Observable<byte[]> call(BluetoothGattCharacteristic bluetoothGattCharacteristic) {
-                              return rxBleConnection.readCharacteristic(bluetoothGattCharacteristic);
-                          }
-                      }, new Func2<BluetoothGattCharacteristic, byte[], Pair<BluetoothGattCharacteristic, byte[]>>() {
-                          @Override
-                          public Pair<BluetoothGattCharacteristic, byte[]> call(BluetoothGattCharacteristic bluetoothGattCharacteristic, byte[] bytes) {
-                              return new Pair<BluetoothGattCharacteristic, byte[]>(bluetoothGattCharacteristic, bytes);
-                          }
-                      })
-                      .doOnUnsubscribe(new Action0() {
-                          @Override
-                          public void call() {
-                              transactions.removeSubscription(transactionId);
-                              // sendError(callbackContext, BleError.cancelled().toJS(), false);
-                          }
-                      })
-                      .subscribe(new Observer<Pair<BluetoothGattCharacteristic, byte[]>>() {
-                          @Override
-                          public void onCompleted() {
-                              transactions.removeSubscription(transactionId);
-                          }
+  }
 
-                          @Override
-                          public void onError(Throwable e) {
-                              transactions.removeSubscription(transactionId);
-                              sendError(callbackContext, errorConverter.toError(e).toJS(), false);
-                          }
+  private void readCharacteristics(final JSONArray args, final CallbackContext callbackContext) throws JSONException {
+      final String deviceId = args.getString(0);
+      final JSONArray jsCharacteristics = args.getJSONArray(1);
+      final String transactionId = args.getString(2);
+      final TransactionOptions options = TransactionOptions.fromJS(args.optJSONObject(3));
 
-                          @Override
-                          public void onNext(Pair<BluetoothGattCharacteristic, byte[]> result) {
-                              try {
-                                  JSONObject jsObject = characteristicConverter.toJSObject(result.first);
-                                  jsObject.put("deviceUUID", deviceId);
-                                  jsObject.put("serviceUUID", serviceUUID);
-                                  jsObject.put("value", Base64.encodeToString(result.second, Base64.DEFAULT));
-                                  sendSuccess(callbackContext, jsObject, false);
-                              } catch(JSONException jsonEx) {
-                                  // ignored !!
-                              }
-                          }
-                      });
+      final BleDevice device = backend.getBleDevice(deviceId);
 
-              transactions.replaceSubscription(transactionId, subscription);
+      if (device == null) {
+          sendError(callbackContext, BleError.deviceNotFound(deviceId).toJS(), false);
+          return;
+      }
 
-          }
-      });
+      final DeviceSession session = sessions.getConnected(deviceId);
+      if (session == null) {
+          sendError(callbackContext, BleError.deviceNotConnected(deviceId).toJS(), false);
+          return;
+      }
+      final BleConnection rxBleConnection = session.getConnection();
+
+      final List<JSONObject> requests = new ArrayList<JSONObject>(jsCharacteristics.length());
+      for (int i = 0; i < jsCharacteristics.length(); i++) {
+          requests.add(jsCharacteristics.getJSONObject(i));
+      }
+
+      // the reads run back to back, a failing read is reported in its slot
+      // and does not stop the following ones. The timeout applies to every read,
+      // a read that times out is reported in its slot as well.
+      final long timeoutMs = options.getTimeoutMs(defaultTimeoutMs);
+      final DeviceSession.Transaction transaction = beginTransaction(session, transactionId, callbackContext);
+      final Subscription subscription = Observable.from(requests)
+              .concatMap(new Func1<JSONObject, Observable<JSONObject>>() {
+                  @Override
+                  public Observable<JSONObject> call(JSONObject request) {
+                      return readCharacteristicToJS(session,
+                              request.optString("serviceUUID"), request.optString("charUUID"),
+                              options.getPriority(), timeoutMs);
+                  }
+              })
+              .toList()
+              .doOnUnsubscribe(new Action0() {
+                  @Override
+                  public void call() {
+                      session.endTransaction(transaction);
+                  }
+              })
+              .subscribe(new Observer<List<JSONObject>>() {
+                  @Override
+                  public void onCompleted() {
+                      session.endTransaction(transaction);
+                  }
+
+                  @Override
+                  public void onError(Throwable e) {
+                      session.endTransaction(transaction);
+                      sendError(callbackContext, errorConverter.toError(e).toJS(), false);
+                  }
+
+                  @Override
+                  public void onNext(List<JSONObject> results) {
+                      sendSuccess(callbackContext, new JSONArray(results), false);
+                  }
+              });
+
+      transaction.setSubscription(subscription);
+  }
+
+  private Observable<JSONObject> readCharacteristicToJS(final DeviceSession session,
+                                                        final String serviceUUIDStr,
+                                                        final String charUUIDStr,
+                                                        final OperationQueue.Priority priority,
+                                                        final long timeoutMs) {
+      final String deviceId = session.getDeviceId();
+      final BleConnection rxBleConnection = session.getConnection();
+
+      final UUID[] UUIDs = UUIDConverter.convert(serviceUUIDStr, charUUIDStr);
+      if (UUIDs == null) {
+          return Observable.just(readErrorToJS(serviceUUIDStr, charUUIDStr,
+                  BleError.invalidUUIDs(serviceUUIDStr, charUUIDStr).toJS()));
+      }
+
+      final UUID serviceUUID = UUIDs[0];
+      final UUID charUUID = UUIDs[1];
 
+      return withTimeout(session.getOperations().enqueue(getCharacteristic(session, serviceUUID, charUUID)
+              .flatMap(new Func1<BluetoothGattCharacteristic, Observable<byte[]>>() {
+                  @Override
+                  public Observable<byte[]> call(BluetoothGattCharacteristic bluetoothGattCharacteristic) {
+                      return rxBleConnection.readCharacteristic(bluetoothGattCharacteristic);
+                  }
+              }, new Func2<BluetoothGattCharacteristic, byte[], JSONObject>() {
+                  @Override
+                  public JSONObject call(BluetoothGattCharacteristic bluetoothGattCharacteristic, byte[] bytes) {
+                      metrics.onBytesIn(bytes.length);
+                      try {
+                          return characteristicToJS(deviceId, serviceUUID, bluetoothGattCharacteristic, bytes);
+                      } catch (JSONException jsonEx) {
+                          return new JSONObject();
+                      }
+                  }
+              })
+              .take(1), priority), timeoutMs)
+              .onErrorReturn(new Func1<Throwable, JSONObject>() {
+                  @Override
+                  public JSONObject call(Throwable throwable) {
+                      Error error = throwable instanceof BleCharacteristicNotFoundException ?
+                              BleError.characteristicNotFound(charUUIDStr) :
+                              errorConverter.toError(throwable);
+                      return readErrorToJS(serviceUUIDStr, charUUIDStr, error.toJS());
+                  }
+              });
+  }
+
+  private JSONObject readErrorToJS(String serviceUUID, String charUUID, JSONObject error) {
+      JSONObject jsObject = new JSONObject();
+      try {
+          jsObject.put("serviceUUID", serviceUUID);
+          jsObject.put("uuid", charUUID);
+          jsObject.put("error", error);
+      } catch (JSONException jsonEx) {
+          // ignored !!
+      }
+      return jsObject;
   }
 
   private void monitorCharacteristic(final JSONArray args, final CallbackContext callbackContext) throws JSONException {
@@ -339,19 +868,21 @@ public class CentralPlugin extends CordovaPlugin {
       final String serviceUUIDStr = args.getString(1);
       final String charUUIDStr = args.getString(2);
       final String transactionId = args.getString(3);
+      final TransactionOptions options = TransactionOptions.fromJS(args.optJSONObject(4));
 
-      final RxBleDevice device = rxBleClient.getBleDevice(deviceId);
+      final BleDevice device = backend.getBleDevice(deviceId);
 
       if (device == null) {
           sendError(callbackContext, BleError.deviceNotFound(deviceId).toJS(), false);
           return;
       }
 
-      final RxBleConnection rxBleConnection = connectionMap.get(deviceId);
-      if (rxBleConnection == null) {
+      final DeviceSession session = sessions.getConnected(deviceId);
+      if (session == null) {
           sendError(callbackContext, BleError.deviceNotConnected(deviceId).toJS(), false);
           return;
       }
+      final BleConnection rxBleConnection = session.getConnection();
 
       final UUID[] UUIDs = UUIDConverter.convert(serviceUUIDStr, charUUIDStr);
       if (UUIDs == null) {
@@ -362,113 +893,298 @@ public class CentralPlugin extends CordovaPlugin {
       final UUID serviceUUID = UUIDs[0];
       final UUID charUUID = UUIDs[1];
 
-      cordova.getThreadPool().execute(new Runnable() {
-          public void run() {
+      final NotificationBuffer notificationBuffer = options.isBatched() ?
+              new NotificationBuffer(options.getBufferSize(), options.getOverflowPolicy()) :
+              null;
+      final AtomicReference<BluetoothGattCharacteristic> notifyingCharacteristic =
+              new AtomicReference<BluetoothGattCharacteristic>();
+      final AtomicBoolean batchMetadataSent = new AtomicBoolean();
+
+      final Subscription flushSubscription;
+      if (notificationBuffer != null) {
+          flushSubscription = Observable
+                  .interval(options.getBatchWindowMs(), options.getBatchWindowMs(), TimeUnit.MILLISECONDS)
+                  .subscribe(new Action1<Long>() {
+                      @Override
+                      public void call(Long tick) {
+                          sendNotificationBatch(
+                                  device.getMacAddress(),
+                                  UUIDConverter.fromUUID(serviceUUID),
+                                  notificationBuffer,
+                                  notifyingCharacteristic.get(),
+                                  options,
+                                  batchMetadataSent,
+                                  callbackContext);
+                      }
+                  });
+      } else {
+          flushSubscription = Subscriptions.empty();
+      }
 
-              final Subscription subscription = rxBleConnection.discoverServices()
-                      .flatMap(new Func1<RxBleDeviceServices, Observable<BluetoothGattCharacteristic>>() {
-                          @Override
-                          public Observable<BluetoothGattCharacteristic> call(RxBleDeviceServices rxBleDeviceServices) {
-                              return rxBleDeviceServices.getCharacteristic(serviceUUID, charUUID);
-                          }
-                      })
-                      .flatMap(new Func1<BluetoothGattCharacteristic, Observable<Observable<byte[]>>>() {
-                          @Override
-                          public Observable<Observable<byte[]>> call(BluetoothGattCharacteristic bluetoothGattCharacteristic) {
-                              return rxBleConnection.setupNotification(bluetoothGattCharacteristic);
-                          }
-                      }, new Func2<BluetoothGattCharacteristic, Observable<byte[]>, Pair<BluetoothGattCharacteristic, Observable<byte[]>>>() {
-                          @Override
-                          public Pair<BluetoothGattCharacteristic, Observable<byte[]>> call(BluetoothGattCharacteristic bluetoothGattCharacteristic, Observable<byte[]> observable) {
-                              return new Pair<BluetoothGattCharacteristic, Observable<byte[]>>(bluetoothGattCharacteristic, observable);
-                          }
-                      })
-                      .flatMap(new Func1<Pair<BluetoothGattCharacteristic, Observable<byte[]>>, Observable<byte[]>>() {
-                          @Override
-                          public Observable<byte[]> call(Pair<BluetoothGattCharacteristic, Observable<byte[]>> bluetoothGattCharacteristicObservablePair) {
-                              return bluetoothGattCharacteristicObservablePair.second;
-                          }
-                      }, new Func2<Pair<BluetoothGattCharacteristic, Observable<byte[]>>, byte[], Pair<BluetoothGattCharacteristic, byte[]>>() {
-                          @Override
-                          public Pair<BluetoothGattCharacteristic, byte[]> call(Pair<BluetoothGattCharacteristic, Observable<byte[]>> bluetoothGattCharacteristicObservablePair, byte[] bytes) {
-                              return new Pair<BluetoothGattCharacteristic, byte[]>(bluetoothGattCharacteristicObservablePair.first, bytes);
-                          }
-                      })
-                      .doOnUnsubscribe(new Action0() {
-                          @Override
-                          public void call() {
-                              removeNotification(UUIDConverter.fromUUID(charUUID), transactionId);
-                              // sendError(callbackContext, BleError.cancelled().toJS(), false);
-                          }
-                      })
-                      .subscribe(new Observer<Pair<BluetoothGattCharacteristic, byte[]>>() {
-                          @Override
-                          public void onCompleted() {
-                              removeNotification(UUIDConverter.fromUUID(charUUID), transactionId);
-                          }
+      // every transaction monitoring this characteristic shares the same notification
+      Observable<Pair<BluetoothGattCharacteristic, byte[]>> notifications = session.getNotifications().observe(
+              serviceUUID, charUUID,
+              new Func0<Observable<Pair<BluetoothGattCharacteristic, byte[]>>>() {
+                  @Override
+                  public Observable<Pair<BluetoothGattCharacteristic, byte[]>> call() {
+                      return setupNotification(session, serviceUUID, charUUID, options.getPriority(),
+                              options.getTimeoutMs(defaultTimeoutMs));
+                  }
+              });
+
+      if (options.isConflated()) {
+          // keep the latest value only, emitted at most once per interval
+          notifications = notifications.sample(options.getConflateMs(), TimeUnit.MILLISECONDS);
+      }
 
-                          @Override
-                          public void onError(Throwable e) {
-                              removeNotification(UUIDConverter.fromUUID(charUUID), transactionId);
-                              sendError(callbackContext, errorConverter.toError(e).toJS(), false);
-                          }
+      // sends what is still buffered when the monitor ends, cancelled or not
+      final Action0 flushRemaining = new Action0() {
+          @Override
+          public void call() {
+              if (notificationBuffer == null) {
+                  return;
+              }
+              flushSubscription.unsubscribe();
+              // the backlog of the block policy goes out one buffer at a time
+              do {
+                  sendNotificationBatch(
+                          device.getMacAddress(),
+                          UUIDConverter.fromUUID(serviceUUID),
+                          notificationBuffer,
+                          notifyingCharacteristic.get(),
+                          options,
+                          batchMetadataSent,
+                          callbackContext);
+              } while (notifyingCharacteristic.get() != null && notificationBuffer.hasRemaining());
+          }
+      };
+
+      final DeviceSession.Transaction transaction = beginTransaction(session, transactionId, callbackContext);
+      final Subscription subscription = notifications
+              .doOnUnsubscribe(new Action0() {
+                  @Override
+                  public void call() {
+                      flushRemaining.call();
+                      session.endTransaction(transaction);
+                      // sendError(callbackContext, BleError.cancelled().toJS(), false);
+                  }
+              })
+              .subscribe(new Observer<Pair<BluetoothGattCharacteristic, byte[]>>() {
+                  // in binary mode, or when asked to omit it, the static metadata is only
+                  // sent along with the first value
+                  private final boolean metadataOnce = options.isBinary() || options.isMetadataOmitted();
+                  private boolean metadataSent = false;
+
+                  @Override
+                  public void onCompleted() {
+                      flushRemaining.call();
+                      session.endTransaction(transaction);
+                  }
+
+                  @Override
+                  public void onError(Throwable e) {
+                      flushRemaining.call();
+                      session.endTransaction(transaction);
+                      sendError(callbackContext, errorConverter.toError(e).toJS(), false);
+                  }
+
+                  @Override
+                  public void onNext(Pair<BluetoothGattCharacteristic, byte[]> result) {
+                      metrics.onNotification(result.second.length);
+
+                      if (notificationBuffer != null) {
+                          notifyingCharacteristic.set(result.first);
+                          notificationBuffer.offer(result.second);
+                          return;
+                      }
+
+                      sendNotification(
+                              device.getMacAddress(),
+                              UUIDConverter.fromUUID(serviceUUID),
+                              result.second,
+                              result.first,
+                              options.isBinary(),
+                              !metadataOnce || !metadataSent,
+                              callbackContext);
+                      metadataSent = true;
+                  }
+              });
+
+      transaction.setSubscription(new CompositeSubscription(subscription, flushSubscription));
 
-                          @Override
-                          public void onNext(Pair<BluetoothGattCharacteristic, byte[]> result) {
-                              sendNotification(
-                                      device.getMacAddress(),
-                                      UUIDConverter.fromUUID(serviceUUID),
-                                      UUIDConverter.fromUUID(charUUID),
-                                      result.second,
-                                      transactionId,
-                                      result.first,
-                                      callbackContext);
-                          }
-                      });
+  }
+
+  private Observable<Pair<BluetoothGattCharacteristic, byte[]>> setupNotification(final DeviceSession session,
+                                                                                 final UUID serviceUUID,
+                                                                                 final UUID charUUID,
+                                                                                 final OperationQueue.Priority priority,
+                                                                                 final long timeoutMs) {
+      final BleConnection rxBleConnection = session.getConnection();
+      // the queue is only held until the notification is enabled, not while it is delivering
+      return withSetupTimeout(session.getOperations().enqueueSetup(getCharacteristic(session, serviceUUID, charUUID)
+              .flatMap(new Func1<BluetoothGattCharacteristic, Observable<Observable<byte[]>>>() {
+                  @Override
+                  public Observable<Observable<byte[]>> call(BluetoothGattCharacteristic bluetoothGattCharacteristic) {
+                      return rxBleConnection.setupNotification(bluetoothGattCharacteristic);
+                  }
+              }, new Func2<BluetoothGattCharacteristic, Observable<byte[]>, Pair<BluetoothGattCharacteristic, Observable<byte[]>>>() {
+                  @Override
+                  public Pair<BluetoothGattCharacteristic, Observable<byte[]>> call(BluetoothGattCharacteristic bluetoothGattCharacteristic, Observable<byte[]> observable) {
+                      return new Pair<BluetoothGattCharacteristic, Observable<byte[]>>(bluetoothGattCharacteristic, observable);
+                  }
+              }), priority), timeoutMs)
+              .flatMap(new Func1<Pair<BluetoothGattCharacteristic, Observable<byte[]>>, Observable<byte[]>>() {
+                  @Override
+                  public Observable<byte[]> call(Pair<BluetoothGattCharacteristic, Observable<byte[]>> bluetoothGattCharacteristicObservablePair) {
+                      return bluetoothGattCharacteristicObservablePair.second;
+                  }
+              }, new Func2<Pair<BluetoothGattCharacteristic, Observable<byte[]>>, byte[], Pair<BluetoothGattCharacteristic, byte[]>>() {
+                  @Override
+                  public Pair<BluetoothGattCharacteristic, byte[]> call(Pair<BluetoothGattCharacteristic, Observable<byte[]>> bluetoothGattCharacteristicObservablePair, byte[] bytes) {
+                      return new Pair<BluetoothGattCharacteristic, byte[]>(bluetoothGattCharacteristicObservablePair.first, bytes);
+                  }
+              });
+  }
 
-              transactions.replaceSubscription(transactionId, subscription);
+  // Fails the transaction once it stayed silent for longer than the timeout, counted from
+  // the call so the time spent waiting in the queue is included. The timeout unsubscribes
+  // the chain, which frees its slot in the operation queue of the device.
+  private <T> Observable<T> withTimeout(Observable<T> transaction, long timeoutMs) {
+      return timeoutMs > 0 ? transaction.timeout(timeoutMs, TimeUnit.MILLISECONDS) : transaction;
+  }
 
+  // Same as withTimeout for the setup of a notification only, once enabled the
+  // notifications can be as far apart as the peripheral wants.
+  private <T> Observable<T> withSetupTimeout(Observable<T> setup, final long timeoutMs) {
+      if (timeoutMs <= 0) {
+          return setup;
+      }
+      return setup.timeout(new Func0<Observable<Long>>() {
+          @Override
+          public Observable<Long> call() {
+              return Observable.timer(timeoutMs, TimeUnit.MILLISECONDS);
+          }
+      }, new Func1<T, Observable<Long>>() {
+          @Override
+          public Observable<Long> call(T t) {
+              return Observable.never();
           }
       });
-
   }
 
   private void sendNotification(final String deviceId,
                                 final String serviceUUID,
-                                final String characteristicUUID,
                                 final byte[] value,
-                                final String transactionId,
                                 final BluetoothGattCharacteristic characteristic,
+                                final boolean binary,
+                                final boolean withMetadata,
                                 final CallbackContext callbackContext) {
 
-      synchronized (notificationMap) {
-          String id = notificationMap.get(characteristicUUID);
-          if (id == null || id.equals(transactionId)) {
-              notificationMap.put(characteristicUUID, transactionId);
-
-              try {
-                  JSONObject jsObject = characteristicConverter.toJSObject(characteristic);
-                  jsObject.put("deviceUUID", deviceId);
-                  jsObject.put("serviceUUID", serviceUUID);
-                  jsObject.put("value", Base64.encodeToString(value, Base64.DEFAULT));
-                  sendSuccess(callbackContext, jsObject, true);
-              } catch(JSONException jsonEx) {
-                  // ignored !!
-              }
-          }
+      if (binary && !withMetadata) {
+          sendSuccess(callbackContext, value, true);
+          return;
+      }
+
+      final long startNanos = System.nanoTime();
+      JsonWriter writer = JsonWriter.obtain().beginObject();
+      if (withMetadata) {
+          characteristicConverter.writeMetadataTo(writer, characteristic, deviceId, serviceUUID);
+      } else {
+          characteristicConverter.writeNotifyingTo(writer, characteristic);
+      }
+      if (!binary) {
+          writer.name("value").valueBase64(value);
+      }
+      String json = writer.endObject().toString();
+      metrics.getSerialization().recordSince(startNanos);
+
+      if (binary) {
+          sendJsonSuccess(callbackContext, json, value, true);
+      } else {
+          sendJsonSuccess(callbackContext, json, true);
       }
   }
 
-  private void removeNotification(final String characteristicUUID,
-                                  final String transactionId) {
-      synchronized (notificationMap) {
-          String id = notificationMap.get(characteristicUUID);
-          if (id != null && id.equals(transactionId)) {
-              notificationMap.remove(characteristicUUID);
+  private void sendNotificationBatch(final String deviceId,
+                                     final String serviceUUID,
+                                     final NotificationBuffer notificationBuffer,
+                                     final BluetoothGattCharacteristic characteristic,
+                                     final TransactionOptions options,
+                                     final AtomicBoolean metadataSent,
+                                     final CallbackContext callbackContext) {
+
+      // nothing was received yet
+      if (characteristic == null) {
+          return;
+      }
+
+      final NotificationBuffer.Batch batch = notificationBuffer.drain();
+      if (batch.isEmpty()) {
+          return;
+      }
+
+      final boolean binary = options.isBinary();
+      final boolean withMetadata = !options.isMetadataOmitted() || metadataSent.compareAndSet(false, true);
+
+      final long startNanos = System.nanoTime();
+      JsonWriter writer = JsonWriter.obtain().beginObject();
+      if (withMetadata) {
+          characteristicConverter.writeMetadataTo(writer, characteristic, deviceId, serviceUUID);
+      } else {
+          characteristicConverter.writeNotifyingTo(writer, characteristic);
+      }
+      writer.name("dropped").value(batch.dropped);
+      writer.name("totalDropped").value(batch.totalDropped);
+      if (!binary) {
+          writer.name("values").beginArray();
+          for (byte[] value : batch.values) {
+              writer.valueBase64(value);
           }
+          writer.endArray();
+      }
+      String json = writer.endObject().toString();
+      metrics.getSerialization().recordSince(startNanos);
+
+      if (binary) {
+          sendJsonSuccess(callbackContext, json, batch.values, true);
+      } else {
+          sendJsonSuccess(callbackContext, json, true);
+      }
+  }
+
+  private void sendCharacteristic(final CallbackContext callbackContext,
+                                  final String deviceId,
+                                  final UUID serviceUUID,
+                                  final BluetoothGattCharacteristic characteristic,
+                                  final byte[] value,
+                                  final boolean binary) {
+      final long startNanos = System.nanoTime();
+      JsonWriter writer = JsonWriter.obtain().beginObject();
+      characteristicConverter.writeMetadataTo(writer, characteristic, deviceId, UUIDConverter.fromUUID(serviceUUID));
+      if (!binary) {
+          writer.name("value").valueBase64(value);
+      }
+      String json = writer.endObject().toString();
+      metrics.getSerialization().recordSince(startNanos);
+
+      if (binary) {
+          sendJsonSuccess(callbackContext, json, value, false);
+      } else {
+          sendJsonSuccess(callbackContext, json, false);
       }
   }
 
+  private JSONObject characteristicToJS(final String deviceId,
+                                        final UUID serviceUUID,
+                                        final BluetoothGattCharacteristic characteristic,
+                                        final byte[] value) throws JSONException {
+      JSONObject jsObject = characteristicConverter.toJSObject(characteristic);
+      jsObject.put("deviceUUID", deviceId);
+      jsObject.put("serviceUUID", UUIDConverter.fromUUID(serviceUUID));
+      jsObject.put("value", Base64.encodeToString(value, Base64.DEFAULT));
+      return jsObject;
+  }
+
   private void monitorDeviceDisconnect(final JSONArray args, final CallbackContext callbackContext) throws JSONException {
       // let's keep the callback
       this.monitorDeviceDisconnectCallbackContext = callbackContext;
@@ -478,31 +1194,136 @@ public class CentralPlugin extends CordovaPlugin {
 
       final UUID[] uuids;
 
-      // JSONArray filteredUUIDs = args.get(0) == null ? null : args.getJSONArray(0);
-      JSONArray filteredUUIDs = null;
+      // service UUIDs are filtered by the Android scanner itself
+      JSONArray filteredUUIDs = args.optJSONArray(0);
 
-      if (filteredUUIDs != null) {
+      if (filteredUUIDs != null && filteredUUIDs.length() > 0) {
           uuids = UUIDConverter.convert(filteredUUIDs);
+          if (uuids == null) {
+              sendError(callbackContext, BleError.invalidUUIDs(filteredUUIDs.toString()).toJS(), false);
+              return;
+          }
       } else {
-          uuids = null;
+          uuids = new UUID[0];
       }
 
-      cordova.getThreadPool().execute(new Runnable() {
+      final ScanOptions scanOptions = ScanOptions.fromJS(args.optJSONObject(1));
+
+      final ScanFilter scanFilter = ScanFilter.fromJS(args.optJSONObject(1));
+      if (scanFilter == null) {
+          sendError(callbackContext, BleError.invalidScanFilter().toJS(), false);
+          return;
+      }
+
+      discoveredDevices.configure(scanOptions.getDiscoveredDevicesCapacity(), scanOptions.getRssiSmoothing());
+
+      final ScanDeduplicator deduplicator = scanOptions.isDeduplicated() ?
+              new ScanDeduplicator(scanOptions.getRssiSmoothing(), scanOptions.getRssiThreshold(), scanOptions.getMinIntervalMs()) :
+              null;
+
+      scheduler.execute(new Runnable() {
           public void run() {
 
-              scanSubscription = rxBleClient
-                      .scanBleDevices(uuids)
-                      .subscribe(new Action1<RxBleScanResult>() {
+              Observable<BleScanResult> scanResults = backend.scanBleDevices(uuids);
+
+              if (!scanFilter.isEmpty()) {
+                  scanResults = scanResults.filter(new Func1<BleScanResult, Boolean>() {
+                      @Override
+                      public Boolean call(BleScanResult rxBleScanResult) {
+                          return scanFilter.accept(
+                                  rxBleScanResult.getBleDevice().getName(),
+                                  rxBleScanResult.getRssi(),
+                                  rxBleScanResult.getScanRecord());
+                      }
+                  });
+              }
+
+              // every accepted result refreshes the registry, even when the deduplicator drops it
+              scanResults = scanResults.doOnNext(new Action1<BleScanResult>() {
+                  @Override
+                  public void call(BleScanResult rxBleScanResult) {
+                      discoveredDevices.onScanResult(
+                              rxBleScanResult.getBleDevice().getMacAddress(),
+                              rxBleScanResult.getBleDevice().getName(),
+                              rxBleScanResult.getRssi(),
+                              rxBleScanResult.getScanRecord(),
+                              System.currentTimeMillis());
+                  }
+              });
+
+              if (deduplicator != null) {
+                  scanResults = scanResults.filter(new Func1<BleScanResult, Boolean>() {
+                      @Override
+                      public Boolean call(BleScanResult rxBleScanResult) {
+                          return deduplicator.accept(
+                                  rxBleScanResult.getBleDevice().getMacAddress(),
+                                  rxBleScanResult.getRssi(),
+                                  System.currentTimeMillis());
+                      }
+                  });
+              }
+
+              // scan results are serialized right away, they cross the bridge as prebuilt JSON
+              final Observable<String> jsScanResults = scanResults
+                      .map(new Func1<BleScanResult, String>() {
                           @Override
-                          public void call(RxBleScanResult rxBleScanResult) {
-                              sendSuccess(callbackContext, scanResult.toJSObject(rxBleScanResult), true);
+                          public String call(BleScanResult rxBleScanResult) {
+                              final long startNanos = System.nanoTime();
+                              JsonWriter writer = JsonWriter.obtain().beginObject();
+                              scanResult.writeTo(writer, rxBleScanResult);
+                              if (scanOptions.isAdvertisementParsed()) {
+                                  // only the results that made it through the filters are parsed
+                                  writer.name("advertisement").rawValue(advertisements.get(
+                                          rxBleScanResult.getBleDevice().getMacAddress(),
+                                          rxBleScanResult.getScanRecord()).toJSON());
+                              }
+                              if (deduplicator != null) {
+                                  String macAddress = rxBleScanResult.getBleDevice().getMacAddress();
+                                  writer.name("smoothedRssi").value(deduplicator.getSmoothedRssi(macAddress));
+                                  writer.name("lastSeen").value(deduplicator.getLastSeen(macAddress));
+                              }
+                              String json = writer.endObject().toString();
+                              metrics.getSerialization().recordSince(startNanos);
+                              return json;
                           }
-                      }, new Action1<Throwable>() {
+                      });
+
+              final Action1<Throwable> onScanError = new Action1<Throwable>() {
+                  @Override
+                  public void call(Throwable throwable) {
+                      sendError(callbackContext, errorConverter.toError(throwable).toJS(), true);
+                  }
+              };
+
+              if (scanOptions.isBatched()) {
+                  scanSubscription = jsScanResults
+                          .buffer(scanOptions.getBatchWindowMs(), TimeUnit.MILLISECONDS, scanOptions.getBatchSize())
+                          .filter(new Func1<List<String>, Boolean>() {
+                              @Override
+                              public Boolean call(List<String> batch) {
+                                  return !batch.isEmpty();
+                              }
+                          })
+                          .subscribe(new Action1<List<String>>() {
+                              @Override
+                              public void call(List<String> batch) {
+                                  JsonWriter writer = JsonWriter.obtain().beginArray();
+                                  for (String jsScanResult : batch) {
+                                      writer.rawValue(jsScanResult);
+                                  }
+                                  sendJsonSuccess(callbackContext, writer.endArray().toString(), true);
+                              }
+                          }, onScanError);
+                  return;
+              }
+
+              scanSubscription = jsScanResults
+                      .subscribe(new Action1<String>() {
                           @Override
-                          public void call(Throwable throwable) {
-                              sendError(callbackContext, errorConverter.toError(throwable).toJS(), true);
+                          public void call(String jsScanResult) {
+                              sendJsonSuccess(callbackContext, jsScanResult, true);
                           }
-                      });
+                      }, onScanError);
           }});
   }
 
@@ -511,12 +1332,13 @@ public class CentralPlugin extends CordovaPlugin {
           scanSubscription.unsubscribe();
           scanSubscription = null;
       }
+      callbackContext.success();
   }
 
   private void disconnectDevice(final JSONArray args, final CallbackContext callbackContext) throws JSONException {
       String deviceId = args.getString(0);
 
-      final RxBleDevice device = rxBleClient.getBleDevice(deviceId);
+      final BleDevice device = backend.getBleDevice(deviceId);
 
       if (connectingDevices.removeSubscription(deviceId) && device != null) {
           sendSuccess(callbackContext, deviceConverter.toJSObject(device), false);
@@ -532,44 +1354,54 @@ public class CentralPlugin extends CordovaPlugin {
   private void isDeviceConnected(final JSONArray args, final CallbackContext callbackContext) throws JSONException {
       String deviceId = args.getString(0);
 
-      final RxBleDevice device = rxBleClient.getBleDevice(deviceId);
+      final BleDevice device = backend.getBleDevice(deviceId);
 
       if (device == null) {
           sendError(callbackContext, BleError.deviceNotFound(deviceId).toJS(), false);
           return;
       }
 
-      boolean connected = device.getConnectionState()
-              .equals(RxBleConnection.RxBleConnectionState.CONNECTED);
-
-      sendSuccess(callbackContext, connected, false);
+      sendSuccess(callbackContext, device.isConnected(), false);
   }
 
   private void connectToDevice(final JSONArray args, final CallbackContext callbackContext) throws JSONException {
 
       String deviceId = args.getString(0);
+      final ConnectionOptions connectionOptions = ConnectionOptions.fromJS(args.optJSONObject(1));
 
-      final RxBleDevice device = rxBleClient.getBleDevice(deviceId);
+      final BleDevice device = backend.getBleDevice(deviceId);
 
       if (device == null) {
           sendError(callbackContext, BleError.deviceNotFound(deviceId).toJS(), false);
           return;
       }
 
-      cordova.getThreadPool().execute(new Runnable() {
+      final DeviceSession session = sessions.open(device.getMacAddress());
+
+      scheduler.execute(new Runnable() {
           public void run() {
 
-              final Subscription subscription = device
-                      .establishConnection(getApplicationContext(), false)
+              Observable<BleConnection> connections = device.establishConnection(false);
+
+              if (connectionOptions.getMtu() > 0 || connectionOptions.hasConnectionPriority()) {
+                  connections = connections.flatMap(new Func1<BleConnection, Observable<BleConnection>>() {
+                      @Override
+                      public Observable<BleConnection> call(BleConnection connection) {
+                          return configureConnection(session, connection, connectionOptions);
+                      }
+                  });
+              }
+
+              final Subscription subscription = connections
                       .doOnUnsubscribe(new Action0() {
                           @Override
                           public void call() {
                               // BleError.cancelled().reject(promise);
                               sendError(callbackContext, BleError.cancelled().toJS(), false);
-                              onDeviceDisconnected(device);
+                              onDeviceDisconnected(device, session);
                           }
                       })
-                      .subscribe(new Observer<RxBleConnection>() {
+                      .subscribe(new Observer<BleConnection>() {
                           @Override
                           public void onCompleted() {
                           }
@@ -577,12 +1409,12 @@ public class CentralPlugin extends CordovaPlugin {
                           @Override
                           public void onError(Throwable e) {
                               sendError(callbackContext, errorConverter.toError(e).toJS(), false);
-                              onDeviceDisconnected(device);
+                              onDeviceDisconnected(device, session);
                           }
 
                           @Override
-                          public void onNext(RxBleConnection connection) {
-                              connectionMap.put(device.getMacAddress(), connection);
+                          public void onNext(BleConnection connection) {
+                              session.onConnected(connection);
                               sendSuccess(callbackContext, deviceConverter.toJSObject(device), false);
                           }
                       });
@@ -592,134 +1424,393 @@ public class CentralPlugin extends CordovaPlugin {
       });
   }
 
-  public void discoverCharacteristics(final JSONArray args, final CallbackContext callbackContext) throws JSONException {
+  // Applies the connection priority and the MTU requested with connectToDevice, a failure
+  // to do so does not fail the connection.
+  private Observable<BleConnection> configureConnection(final DeviceSession session,
+                                                        final BleConnection connection,
+                                                        final ConnectionOptions connectionOptions) {
+      Observable<BleConnection> configured = Observable.just(connection);
+
+      if (connectionOptions.hasConnectionPriority()) {
+          configured = connection
+                  .requestConnectionPriority(connectionOptions.getConnectionPriority(), 0, TimeUnit.MILLISECONDS)
+                  .onErrorComplete()
+                  .andThen(configured);
+      }
+
+      if (connectionOptions.getMtu() > 0) {
+          configured = configured.flatMap(new Func1<BleConnection, Observable<BleConnection>>() {
+              @Override
+              public Observable<BleConnection> call(final BleConnection rxBleConnection) {
+                  return rxBleConnection.requestMtu(connectionOptions.getMtu())
+                          .doOnNext(new Action1<Integer>() {
+                              @Override
+                              public void call(Integer mtu) {
+                                  session.setMtu(mtu);
+                              }
+                          })
+                          .onErrorReturn(new Func1<Throwable, Integer>() {
+                              @Override
+                              public Integer call(Throwable throwable) {
+                                  return DeviceSession.DEFAULT_MTU;
+                              }
+                          })
+                          .map(new Func1<Integer, BleConnection>() {
+                              @Override
+                              public BleConnection call(Integer mtu) {
+                                  return rxBleConnection;
+                              }
+                          });
+              }
+          });
+      }
+
+      return configured;
+  }
+
+  private void requestMtu(final JSONArray args, final CallbackContext callbackContext) throws JSONException {
       final String deviceId = args.getString(0);
-      final String serviceUUIDStr = args.getString(1);
+      final int mtu = args.getInt(1);
 
-      final RxBleDevice device = rxBleClient.getBleDevice(deviceId);
+      final BleDevice device = backend.getBleDevice(deviceId);
 
       if (device == null) {
           sendError(callbackContext, BleError.deviceNotFound(deviceId).toJS(), false);
           return;
       }
 
-      final RxBleConnection rxBleConnection = connectionMap.get(deviceId);
-      if (rxBleConnection == null) {
+      final DeviceSession session = sessions.getConnected(deviceId);
+      if (session == null) {
           sendError(callbackContext, BleError.deviceNotConnected(deviceId).toJS(), false);
           return;
       }
+      final BleConnection rxBleConnection = session.getConnection();
+
+      session.getOperations().enqueue(rxBleConnection.requestMtu(mtu), OperationQueue.Priority.NORMAL)
+              .subscribe(new Observer<Integer>() {
+                  @Override
+                  public void onCompleted() {
+
+                  }
+
+                  @Override
+                  public void onError(Throwable e) {
+                      sendError(callbackContext, errorConverter.toError(e).toJS(), false);
+                  }
+
+                  @Override
+                  public void onNext(Integer negotiatedMtu) {
+                      session.setMtu(negotiatedMtu);
+                      sendSuccess(callbackContext, (int) negotiatedMtu, false);
+                  }
+              });
+  }
 
-      final UUID serviceUUID = UUIDConverter.convert(serviceUUIDStr);
-      if (serviceUUID == null) {
-          sendError(callbackContext, BleError.invalidUUIDs(serviceUUIDStr).toJS(), false);
+  private void getMtu(final JSONArray args, final CallbackContext callbackContext) throws JSONException {
+      final String deviceId = args.getString(0);
+
+      final DeviceSession session = sessions.getConnected(deviceId);
+      if (session == null) {
+          sendError(callbackContext, BleError.deviceNotConnected(deviceId).toJS(), false);
           return;
       }
 
-      cordova.getThreadPool().execute(new Runnable() {
-          public void run() {
+      sendSuccess(callbackContext, session.getMtu(), false);
+  }
 
-              rxBleConnection.discoverServices()
-                      .subscribe(new Observer<RxBleDeviceServices>() {
-                          @Override
-                          public void onCompleted() {
+  private void requestConnectionPriority(final JSONArray args, final CallbackContext callbackContext) throws JSONException {
+      final String deviceId = args.getString(0);
+      final String priority = args.getString(1);
 
-                          }
+      final DeviceSession session = sessions.getConnected(deviceId);
+      if (session == null) {
+          sendError(callbackContext, BleError.deviceNotConnected(deviceId).toJS(), false);
+          return;
+      }
+      final BleConnection rxBleConnection = session.getConnection();
 
-                          @Override
-                          public void onError(Throwable e) {
-                              sendError(callbackContext, BleError.deviceNotFound(deviceId).toJS(), false);
-                          }
+      final int connectionPriority = ConnectionOptions.connectionPriorityFromJS(priority);
+      if (connectionPriority == ConnectionOptions.NO_CONNECTION_PRIORITY) {
+          sendError(callbackContext, BleError.invalidConnectionPriority(priority).toJS(), false);
+          return;
+      }
 
-                          @Override
-                          public void onNext(RxBleDeviceServices bluetoothGattServices) {
-                              BluetoothGattService foundService = null;
-                              for (BluetoothGattService service : bluetoothGattServices.getBluetoothGattServices()) {
-                                  if (service.getUuid().equals(serviceUUID)) {
-                                      foundService = service;
-                                      break;
-                                  }
-                              }
+      session.getOperations()
+              .enqueue(rxBleConnection.requestConnectionPriority(connectionPriority, 0, TimeUnit.MILLISECONDS).toObservable(),
+                      OperationQueue.Priority.NORMAL)
+              .toCompletable()
+              .subscribe(new Action0() {
+                  @Override
+                  public void call() {
+                      callbackContext.success();
+                  }
+              }, new Action1<Throwable>() {
+                  @Override
+                  public void call(Throwable throwable) {
+                      sendError(callbackContext, errorConverter.toError(throwable).toJS(), false);
+                  }
+              });
+  }
 
-                              if (foundService == null) {
-                                  sendError(callbackContext, BleError.serviceNotFound(serviceUUIDStr).toJS(), false);
-                                  return;
-                              }
+  private void getOperationQueues(final CallbackContext callbackContext) {
+      JSONArray queues = new JSONArray();
+      for (DeviceSession session : sessions.getAll()) {
+          OperationQueue operations = session.getOperations();
+          try {
+              JSONObject jsQueue = new JSONObject();
+              jsQueue.put("deviceUUID", session.getDeviceId());
+              jsQueue.put("depth", operations.getDepth());
+              jsQueue.put("interactiveDepth", operations.getDepth(OperationQueue.Priority.INTERACTIVE));
+              jsQueue.put("bulkDepth", operations.getDepth(OperationQueue.Priority.BULK));
+              jsQueue.put("running", operations.isRunning());
+              jsQueue.put("started", operations.getStarted());
+              jsQueue.put("averageWaitMs", operations.getAverageWaitMs());
+              jsQueue.put("maxWaitMs", operations.getMaxWaitMs());
+              queues.put(jsQueue);
+          } catch (JSONException jsonEx) {
+              // ignored !!
+          }
+      }
+      sendSuccess(callbackContext, queues, false);
+  }
 
-                              try {
+  // args: [{ namePrefix, minRssi, maxAgeMs, serviceUUID, sortBy, limit, advertisement }]
+  private void getDiscoveredDevices(final JSONArray args, final CallbackContext callbackContext) {
+      final DiscoveryQuery query = DiscoveryQuery.fromJS(args.optJSONObject(0));
+      if (query == null) {
+          JSONObject options = args.optJSONObject(0);
+          sendError(callbackContext, BleError.invalidUUIDs(options.optString("serviceUUID")).toJS(), false);
+          return;
+      }
 
-                                  JSONArray jsCharacteristics = new JSONArray();
-                                  for (BluetoothGattCharacteristic characteristic : foundService.getCharacteristics()) {
-                                      JSONObject value = characteristicConverter.toJSObject(characteristic);
-                                      value.put("deviceUUID", device.getMacAddress());
-                                      value.put("serviceUUID", UUIDConverter.fromUUID(serviceUUID));
-                                      jsCharacteristics.put(value);
-                                  }
-                                  sendSuccess(callbackContext, jsCharacteristics, false);
+      final long startNanos = System.nanoTime();
+      List<DiscoveredDevices.Device> devices = discoveredDevices.query(query, System.currentTimeMillis());
 
-                              } catch (JSONException jsex) {
-                                  // ignored !!
-                              }
-                          }
-                      });
-          }});
+      JsonWriter writer = JsonWriter.obtain().beginArray();
+      for (DiscoveredDevices.Device device : devices) {
+          writer.beginObject();
+          writer.name("uuid").value(device.macAddress);
+          if (device.name != null) {
+              writer.name("name").value(device.name);
+          }
+          writer.name("rssi").value(device.rssi);
+          writer.name("smoothedRssi").value(device.smoothedRssi);
+          writer.name("lastSeen").value(device.lastSeen);
+          if (query.isAdvertisementIncluded()) {
+              writer.name("advertisement").rawValue(discoveredDevices.getAdvertisement(device).toJSON());
+          }
+          writer.endObject();
+      }
+      String json = writer.endArray().toString();
+      metrics.getSerialization().recordSince(startNanos);
 
+      sendJsonSuccess(callbackContext, json, false);
   }
 
-  public void discoverServices(final JSONArray args, final CallbackContext callbackContext) throws JSONException {
+  // options: intervalMs to keep pushing a snapshot periodically (a later call replaces
+  // the periodic push, 0 stops it), reset to clear the metrics once they were reported
+  private void getMetrics(final JSONArray args, final CallbackContext callbackContext) throws JSONException {
+      final JSONObject options = args.optJSONObject(0);
+      final long intervalMs = options != null ? Math.max(0, options.optLong("intervalMs", 0)) : 0;
+      final boolean reset = options != null && options.optBoolean("reset", false);
+
+      if (metricsSubscription != null) {
+          metricsSubscription.unsubscribe();
+          metricsSubscription = null;
+      }
+
+      if (intervalMs == 0) {
+          sendMetrics(callbackContext, reset, false);
+          return;
+      }
+
+      metricsSubscription = Observable
+              .interval(intervalMs, intervalMs, TimeUnit.MILLISECONDS)
+              .subscribe(new Action1<Long>() {
+                  @Override
+                  public void call(Long tick) {
+                      sendMetrics(callbackContext, reset, true);
+                  }
+              });
+  }
 
+  private void sendMetrics(final CallbackContext callbackContext, boolean reset, boolean keepCallback) {
+      try {
+          sendSuccess(callbackContext, metrics.toJS(getTransactionCount()), keepCallback);
+          if (reset) {
+              metrics.reset();
+          }
+      } catch (JSONException jsonEx) {
+          // ignored !!
+      }
+  }
+
+  public void discoverCharacteristics(final JSONArray args, final CallbackContext callbackContext) throws JSONException {
       final String deviceId = args.getString(0);
+      final String serviceUUIDStr = args.getString(1);
 
-      final RxBleDevice device = rxBleClient.getBleDevice(deviceId);
+      final BleDevice device = backend.getBleDevice(deviceId);
 
       if (device == null) {
           sendError(callbackContext, BleError.deviceNotFound(deviceId).toJS(), false);
           return;
       }
 
-      final RxBleConnection rxBleConnection = connectionMap.get(deviceId);
-      if (rxBleConnection == null) {
+      final DeviceSession session = sessions.getConnected(deviceId);
+      if (session == null) {
           sendError(callbackContext, BleError.deviceNotConnected(deviceId).toJS(), false);
           return;
       }
+      final BleConnection rxBleConnection = session.getConnection();
 
-      cordova.getThreadPool().execute(new Runnable() {
-          public void run() {
-
-              rxBleConnection.discoverServices()
-                      .subscribe(new Observer<RxBleDeviceServices>() {
-                          @Override
-                          public void onCompleted() {
+      final UUID serviceUUID = UUIDConverter.convert(serviceUUIDStr);
+      if (serviceUUID == null) {
+          sendError(callbackContext, BleError.invalidUUIDs(serviceUUIDStr).toJS(), false);
+          return;
+      }
 
+      session.getOperations().enqueue(rxBleConnection.discoverServices(), OperationQueue.Priority.NORMAL)
+              .doOnNext(new Action1<RxBleDeviceServices>() {
+                  @Override
+                  public void call(RxBleDeviceServices rxBleDeviceServices) {
+                      session.getAttributes().index(rxBleDeviceServices);
+                  }
+              })
+              .subscribe(new Observer<RxBleDeviceServices>() {
+                  @Override
+                  public void onCompleted() {
+
+                  }
+
+                  @Override
+                  public void onError(Throwable e) {
+                      sendError(callbackContext, BleError.deviceNotFound(deviceId).toJS(), false);
+                  }
+
+                  @Override
+                  public void onNext(RxBleDeviceServices bluetoothGattServices) {
+                      BluetoothGattService foundService = null;
+                      for (BluetoothGattService service : bluetoothGattServices.getBluetoothGattServices()) {
+                          if (service.getUuid().equals(serviceUUID)) {
+                              foundService = service;
+                              break;
                           }
+                      }
 
-                          @Override
-                          public void onError(Throwable e) {
-                              sendError(callbackContext, BleError.deviceNotFound(deviceId).toJS(), false);
+                      if (foundService == null) {
+                          sendError(callbackContext, BleError.serviceNotFound(serviceUUIDStr).toJS(), false);
+                          return;
+                      }
+
+                      try {
+
+                          JSONArray jsCharacteristics = new JSONArray();
+                          for (BluetoothGattCharacteristic characteristic : foundService.getCharacteristics()) {
+                              JSONObject value = characteristicConverter.toJSObject(characteristic);
+                              value.put("deviceUUID", device.getMacAddress());
+                              value.put("serviceUUID", UUIDConverter.fromUUID(serviceUUID));
+                              jsCharacteristics.put(value);
                           }
+                          sendSuccess(callbackContext, jsCharacteristics, false);
 
-                          @Override
-                          public void onNext(RxBleDeviceServices bluetoothGattServices) {
-
-                              try {
-                                  JSONArray services = new JSONArray();
-                                  for (BluetoothGattService service : bluetoothGattServices.getBluetoothGattServices()) {
-                                      JSONObject jsService = serviceConverter.toJSObject(service);
-                                      jsService.put("deviceUUID", device.getMacAddress());
-                                      services.put(jsService);
-                                  }
-                                  sendSuccess(callbackContext, services, false);
-                              } catch (JSONException ex) {
-                                  // ignored !
-                              }
+                      } catch (JSONException jsex) {
+                          // ignored !!
+                      }
+                  }
+              });
+
+  }
+
+  public void discoverServices(final JSONArray args, final CallbackContext callbackContext) throws JSONException {
+
+      final String deviceId = args.getString(0);
+
+      final BleDevice device = backend.getBleDevice(deviceId);
+
+      if (device == null) {
+          sendError(callbackContext, BleError.deviceNotFound(deviceId).toJS(), false);
+          return;
+      }
+
+      final DeviceSession session = sessions.getConnected(deviceId);
+      if (session == null) {
+          sendError(callbackContext, BleError.deviceNotConnected(deviceId).toJS(), false);
+          return;
+      }
+      final BleConnection rxBleConnection = session.getConnection();
+
+      session.getOperations().enqueue(rxBleConnection.discoverServices(), OperationQueue.Priority.NORMAL)
+              .doOnNext(new Action1<RxBleDeviceServices>() {
+                  @Override
+                  public void call(RxBleDeviceServices rxBleDeviceServices) {
+                      session.getAttributes().index(rxBleDeviceServices);
+                  }
+              })
+              .subscribe(new Observer<RxBleDeviceServices>() {
+                  @Override
+                  public void onCompleted() {
+
+                  }
+
+                  @Override
+                  public void onError(Throwable e) {
+                      sendError(callbackContext, BleError.deviceNotFound(deviceId).toJS(), false);
+                  }
+
+                  @Override
+                  public void onNext(RxBleDeviceServices bluetoothGattServices) {
+
+                      try {
+                          JSONArray services = new JSONArray();
+                          for (BluetoothGattService service : bluetoothGattServices.getBluetoothGattServices()) {
+                              JSONObject jsService = serviceConverter.toJSObject(service);
+                              jsService.put("deviceUUID", device.getMacAddress());
+                              services.put(jsService);
                           }
-                      });
+                          sendSuccess(callbackContext, services, false);
+                      } catch (JSONException ex) {
+                          // ignored !
+                      }
+                  }
+              });
+  }
 
-          }});
+  private Observable<BluetoothGattCharacteristic> getCharacteristic(final DeviceSession session,
+                                                                    final UUID serviceUUID,
+                                                                    final UUID charUUID) {
+      final GattAttributeCache attributes = session.getAttributes();
+
+      // fast path, the attributes of this connection were already indexed
+      final BluetoothGattCharacteristic characteristic = attributes.get(serviceUUID, charUUID);
+      if (characteristic != null) {
+          return Observable.just(characteristic);
+      }
+
+      if (attributes.isIndexed()) {
+          return Observable.error(new BleCharacteristicNotFoundException(charUUID));
+      }
+
+      return session.getConnection().discoverServices()
+              .doOnNext(new Action1<RxBleDeviceServices>() {
+                  @Override
+                  public void call(RxBleDeviceServices rxBleDeviceServices) {
+                      attributes.index(rxBleDeviceServices);
+                  }
+              })
+              .flatMap(new Func1<RxBleDeviceServices, Observable<BluetoothGattCharacteristic>>() {
+                  @Override
+                  public Observable<BluetoothGattCharacteristic> call(RxBleDeviceServices rxBleDeviceServices) {
+                      return rxBleDeviceServices.getCharacteristic(serviceUUID, charUUID);
+                  }
+              });
   }
 
-  private void onDeviceDisconnected(RxBleDevice device) {
-      connectingDevices.removeSubscription(device.getMacAddress());
-      connectionMap.remove(device.getMacAddress());
+  private void onDeviceDisconnected(BleDevice device, DeviceSession session) {
+      sessions.close(session);
+      // a newer connection attempt of this device may own the entry by now
+      if (sessions.get(device.getMacAddress()) == null) {
+          connectingDevices.removeSubscription(device.getMacAddress());
+      }
 
       if (this.monitorDeviceDisconnectCallbackContext != null) {
           sendSuccess(this.monitorDeviceDisconnectCallbackContext, deviceConverter.toJSObject(device), true);
@@ -727,6 +1818,7 @@ public class CentralPlugin extends CordovaPlugin {
   }
 
   private void sendError(final CallbackContext callbackContext, JSONObject object, boolean keepCallback) {
+      metrics.onError(object.optInt("code", 0));
       PluginResult result = new PluginResult(PluginResult.Status.ERROR, object);
       result.setKeepCallback(keepCallback);
       callbackContext.sendPluginResult(result);
@@ -750,6 +1842,46 @@ public class CentralPlugin extends CordovaPlugin {
       callbackContext.sendPluginResult(result);
   }
 
+  private void sendSuccess(final CallbackContext callbackContext, int object, boolean keepCallback) {
+      PluginResult result = new PluginResult(PluginResult.Status.OK, object);
+      result.setKeepCallback(keepCallback);
+      callbackContext.sendPluginResult(result);
+  }
+
+  private void sendSuccess(final CallbackContext callbackContext, byte[] value, boolean keepCallback) {
+      PluginResult result = new PluginResult(PluginResult.Status.OK, value);
+      result.setKeepCallback(keepCallback);
+      callbackContext.sendPluginResult(result);
+  }
+
+  private void sendJsonSuccess(final CallbackContext callbackContext, String json, boolean keepCallback) {
+      PluginResult result = new JsonPluginResult(PluginResult.Status.OK, json);
+      result.setKeepCallback(keepCallback);
+      callbackContext.sendPluginResult(result);
+  }
+
+  // multipart message, the success callback receives (metadata, ArrayBuffer)
+  private void sendJsonSuccess(final CallbackContext callbackContext, String metadata, byte[] value, boolean keepCallback) {
+      List<PluginResult> parts = new ArrayList<PluginResult>(2);
+      parts.add(new JsonPluginResult(PluginResult.Status.OK, metadata));
+      parts.add(new PluginResult(PluginResult.Status.OK, value));
+      PluginResult result = new PluginResult(PluginResult.Status.OK, parts);
+      result.setKeepCallback(keepCallback);
+      callbackContext.sendPluginResult(result);
+  }
+
+  // multipart message, the success callback receives (metadata, ArrayBuffer, ArrayBuffer, ...)
+  private void sendJsonSuccess(final CallbackContext callbackContext, String metadata, List<byte[]> values, boolean keepCallback) {
+      List<PluginResult> parts = new ArrayList<PluginResult>(values.size() + 1);
+      parts.add(new JsonPluginResult(PluginResult.Status.OK, metadata));
+      for (byte[] value : values) {
+          parts.add(new PluginResult(PluginResult.Status.OK, value));
+      }
+      PluginResult result = new PluginResult(PluginResult.Status.OK, parts);
+      result.setKeepCallback(keepCallback);
+      callbackContext.sendPluginResult(result);
+  }
+
   private Context getApplicationContext() {
     return cordova.getActivity();
   }
@@ -0,0 +1,21 @@
+package com.ksachdeva.opensource.ble.central.backend;
+
+import java.util.UUID;
+
+import rx.Observable;
+
+/**
+ * The Bluetooth stack behind the plugin.
+ *
+ * Only the calls the plugin makes are exposed, so the Android stack (RxBleBackend) can be
+ * replaced by another implementation such as the in-memory SimulatedBackend.
+ */
+public interface BleBackend {
+
+    Observable<BleScanResult> scanBleDevices(UUID... filterServiceUUIDs);
+
+    /**
+     * @return the device, or null when the backend does not know the MAC address
+     */
+    BleDevice getBleDevice(String macAddress);
+}
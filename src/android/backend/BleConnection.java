@@ -0,0 +1,25 @@
+package com.ksachdeva.opensource.ble.central.backend;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import java.util.concurrent.TimeUnit;
+
+import com.polidea.rxandroidble.RxBleDeviceServices;
+
+import rx.Completable;
+import rx.Observable;
+
+public interface BleConnection {
+
+    Observable<RxBleDeviceServices> discoverServices();
+
+    Observable<byte[]> readCharacteristic(BluetoothGattCharacteristic characteristic);
+
+    Observable<byte[]> writeCharacteristic(BluetoothGattCharacteristic characteristic, byte[] value);
+
+    Observable<Observable<byte[]>> setupNotification(BluetoothGattCharacteristic characteristic);
+
+    Observable<Integer> requestMtu(int mtu);
+
+    Completable requestConnectionPriority(int connectionPriority, long delay, TimeUnit timeUnit);
+}
@@ -0,0 +1,17 @@
+package com.ksachdeva.opensource.ble.central.backend;
+
+import rx.Observable;
+
+public interface BleDevice {
+
+    String getMacAddress();
+
+    String getName();
+
+    boolean isConnected();
+
+    /**
+     * Emits the connection once established, the device is disconnected on unsubscribe.
+     */
+    Observable<BleConnection> establishConnection(boolean autoConnect);
+}
@@ -0,0 +1,26 @@
+package com.ksachdeva.opensource.ble.central.backend;
+
+public class BleScanResult {
+
+    private final BleDevice bleDevice;
+    private final int rssi;
+    private final byte[] scanRecord;
+
+    public BleScanResult(BleDevice bleDevice, int rssi, byte[] scanRecord) {
+        this.bleDevice = bleDevice;
+        this.rssi = rssi;
+        this.scanRecord = scanRecord;
+    }
+
+    public BleDevice getBleDevice() {
+        return bleDevice;
+    }
+
+    public int getRssi() {
+        return rssi;
+    }
+
+    public byte[] getScanRecord() {
+        return scanRecord;
+    }
+}
@@ -0,0 +1,122 @@
+package com.ksachdeva.opensource.ble.central.backend;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.content.Context;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import com.polidea.rxandroidble.RxBleClient;
+import com.polidea.rxandroidble.RxBleConnection;
+import com.polidea.rxandroidble.RxBleDevice;
+import com.polidea.rxandroidble.RxBleDeviceServices;
+import com.polidea.rxandroidble.RxBleScanResult;
+
+import rx.Completable;
+import rx.Observable;
+import rx.functions.Func1;
+
+/**
+ * The Android Bluetooth stack, through RxAndroidBle.
+ */
+public class RxBleBackend implements BleBackend {
+
+    private final RxBleClient rxBleClient;
+
+    public RxBleBackend(Context context) {
+        this.rxBleClient = RxBleClient.create(context);
+    }
+
+    @Override
+    public Observable<BleScanResult> scanBleDevices(UUID... filterServiceUUIDs) {
+        return rxBleClient.scanBleDevices(filterServiceUUIDs)
+                .map(new Func1<RxBleScanResult, BleScanResult>() {
+                    @Override
+                    public BleScanResult call(RxBleScanResult rxBleScanResult) {
+                        return new BleScanResult(new Device(rxBleScanResult.getBleDevice()),
+                                rxBleScanResult.getRssi(),
+                                rxBleScanResult.getScanRecord());
+                    }
+                });
+    }
+
+    @Override
+    public BleDevice getBleDevice(String macAddress) {
+        RxBleDevice device = rxBleClient.getBleDevice(macAddress);
+        return device != null ? new Device(device) : null;
+    }
+
+    private static class Device implements BleDevice {
+
+        private final RxBleDevice device;
+
+        Device(RxBleDevice device) {
+            this.device = device;
+        }
+
+        @Override
+        public String getMacAddress() {
+            return device.getMacAddress();
+        }
+
+        @Override
+        public String getName() {
+            return device.getName();
+        }
+
+        @Override
+        public boolean isConnected() {
+            return device.getConnectionState().equals(RxBleConnection.RxBleConnectionState.CONNECTED);
+        }
+
+        @Override
+        public Observable<BleConnection> establishConnection(boolean autoConnect) {
+            return device.establishConnection(autoConnect)
+                    .map(new Func1<RxBleConnection, BleConnection>() {
+                        @Override
+                        public BleConnection call(RxBleConnection rxBleConnection) {
+                            return new Connection(rxBleConnection);
+                        }
+                    });
+        }
+    }
+
+    private static class Connection implements BleConnection {
+
+        private final RxBleConnection connection;
+
+        Connection(RxBleConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Observable<RxBleDeviceServices> discoverServices() {
+            return connection.discoverServices();
+        }
+
+        @Override
+        public Observable<byte[]> readCharacteristic(BluetoothGattCharacteristic characteristic) {
+            return connection.readCharacteristic(characteristic);
+        }
+
+        @Override
+        public Observable<byte[]> writeCharacteristic(BluetoothGattCharacteristic characteristic, byte[] value) {
+            return connection.writeCharacteristic(characteristic, value);
+        }
+
+        @Override
+        public Observable<Observable<byte[]>> setupNotification(BluetoothGattCharacteristic characteristic) {
+            return connection.setupNotification(characteristic);
+        }
+
+        @Override
+        public Observable<Integer> requestMtu(int mtu) {
+            return connection.requestMtu(mtu);
+        }
+
+        @Override
+        public Completable requestConnectionPriority(int connectionPriority, long delay, TimeUnit timeUnit) {
+            return connection.requestConnectionPriority(connectionPriority, delay, timeUnit);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.ksachdeva.opensource.ble.central.backend;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+
+/**
+ * In-memory backend made of simulated peripherals, for running the plugin without
+ * Bluetooth hardware.
+ *
+ * While scanning every peripheral advertises at the interval of its profile, with an RSSI
+ * varying by up to RSSI_JITTER around its nominal value.
+ */
+public class SimulatedBackend implements BleBackend {
+
+    static final int RSSI_JITTER = 3;
+
+    private final Map<String, SimulatedPeripheral> peripherals = new ConcurrentHashMap<String, SimulatedPeripheral>();
+    private final Scheduler scheduler;
+    private final Random random;
+
+    public SimulatedBackend() {
+        this(Schedulers.computation(), new Random());
+    }
+
+    /**
+     * @param random seeded to replay the same latencies and failures
+     */
+    public SimulatedBackend(Scheduler scheduler, Random random) {
+        this.scheduler = scheduler;
+        this.random = random;
+    }
+
+    /**
+     * @return the backend, or null when one of the peripherals is invalid
+     * @see SimulatedPeripheral#fromJS(JSONObject)
+     */
+    public static SimulatedBackend fromJS(JSONArray jsPeripherals) {
+        SimulatedBackend backend = new SimulatedBackend();
+        for (int i = 0; jsPeripherals != null && i < jsPeripherals.length(); i++) {
+            JSONObject jsPeripheral = jsPeripherals.optJSONObject(i);
+            SimulatedPeripheral peripheral = jsPeripheral != null ? SimulatedPeripheral.fromJS(jsPeripheral) : null;
+            if (peripheral == null) {
+                return null;
+            }
+            backend.addPeripheral(peripheral);
+        }
+        return backend;
+    }
+
+    public void addPeripheral(SimulatedPeripheral peripheral) {
+        peripheral.attach(scheduler, random);
+        peripherals.put(peripheral.getMacAddress(), peripheral);
+    }
+
+    public void removePeripheral(String macAddress) {
+        peripherals.remove(macAddress);
+    }
+
+    @Override
+    public Observable<BleScanResult> scanBleDevices(UUID... filterServiceUUIDs) {
+        List<Observable<BleScanResult>> advertisements = new ArrayList<Observable<BleScanResult>>();
+
+        for (final SimulatedPeripheral peripheral : peripherals.values()) {
+            if (!peripheral.advertises(filterServiceUUIDs)) {
+                continue;
+            }
+
+            long intervalMs = peripheral.getProfile().getAdvertisingIntervalMs();
+            advertisements.add(Observable.interval(intervalMs, TimeUnit.MILLISECONDS, scheduler)
+                    .onBackpressureDrop()
+                    .map(new Func1<Long, BleScanResult>() {
+                        @Override
+                        public BleScanResult call(Long tick) {
+                            int rssi = peripheral.getRssi() + random.nextInt(2 * RSSI_JITTER + 1) - RSSI_JITTER;
+                            return new BleScanResult(peripheral, rssi, peripheral.getScanRecord());
+                        }
+                    }));
+        }
+
+        return advertisements.isEmpty() ? Observable.<BleScanResult>never() : Observable.merge(advertisements);
+    }
+
+    @Override
+    public BleDevice getBleDevice(String macAddress) {
+        return peripherals.get(macAddress);
+    }
+}
@@ -0,0 +1,11 @@
+package com.ksachdeva.opensource.ble.central.backend;
+
+/**
+ * Failure injected by a simulated peripheral, reported like a GATT error.
+ */
+public class SimulatedGattException extends RuntimeException {
+
+    public SimulatedGattException(String operation, String macAddress) {
+        super("Simulated " + operation + " failure on " + macAddress);
+    }
+}
@@ -0,0 +1,405 @@
+package com.ksachdeva.opensource.ble.central.backend;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+import android.util.Base64;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.polidea.rxandroidble.RxBleDeviceServices;
+
+import com.ksachdeva.opensource.ble.central.utils.UUIDConverter;
+
+import rx.Completable;
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+
+/**
+ * In-memory peripheral with a scripted GATT table.
+ *
+ * Reads return the last written value of the characteristic, writes store it. Notifying
+ * characteristics push payloads at the rate of the profile: the first 8 bytes carry the
+ * System.nanoTime() of the emission and the next 4 the sequence number, so the delivery
+ * latency can be measured on the receiving side (see getSentAtNanos).
+ */
+public class SimulatedPeripheral implements BleDevice {
+
+    static final int DEFAULT_RSSI = -60;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private interface Metadata {
+        String ID = "id";
+        String NAME = "name";
+        String RSSI = "rssi";
+        String SERVICES = "services";
+        String UUID = "uuid";
+        String CHARACTERISTICS = "characteristics";
+        String PROPERTIES = "properties";
+        String VALUE = "value";
+        String PROFILE = "profile";
+    }
+
+    private final String macAddress;
+    private final String name;
+    private final int rssi;
+    private final List<BluetoothGattService> services;
+    private final SimulationProfile profile;
+    private final Map<BluetoothGattCharacteristic, byte[]> values =
+            new ConcurrentHashMap<BluetoothGattCharacteristic, byte[]>();
+    private final byte[] scanRecord;
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private volatile Scheduler scheduler = Schedulers.computation();
+    private volatile Random random = new Random();
+
+    public SimulatedPeripheral(String macAddress,
+                               String name,
+                               int rssi,
+                               List<BluetoothGattService> services,
+                               SimulationProfile profile) {
+        this.macAddress = macAddress;
+        this.name = name;
+        this.rssi = rssi;
+        this.services = Collections.unmodifiableList(new ArrayList<BluetoothGattService>(services));
+        this.profile = profile;
+        this.scanRecord = createScanRecord(name, services);
+    }
+
+    /**
+     * Reads { id, name, rssi, services: [{ uuid, characteristics: [{ uuid, properties, value }] }], profile },
+     * properties being an array of "read", "write", "writeWithoutResponse", "notify" and "indicate"
+     * and value a Base64 string.
+     *
+     * @return the peripheral, or null when the id is missing or a UUID is invalid
+     */
+    public static SimulatedPeripheral fromJS(JSONObject js) {
+        String macAddress = js.optString(Metadata.ID, "");
+        if (macAddress.length() == 0) {
+            return null;
+        }
+
+        List<BluetoothGattService> services = new ArrayList<BluetoothGattService>();
+        Map<BluetoothGattCharacteristic, byte[]> values = new ConcurrentHashMap<BluetoothGattCharacteristic, byte[]>();
+
+        JSONArray jsServices = js.optJSONArray(Metadata.SERVICES);
+        for (int i = 0; jsServices != null && i < jsServices.length(); i++) {
+            JSONObject jsService = jsServices.optJSONObject(i);
+            UUID serviceUUID = jsService != null ? UUIDConverter.convert(jsService.optString(Metadata.UUID, "")) : null;
+            if (serviceUUID == null) {
+                return null;
+            }
+
+            BluetoothGattService service = new BluetoothGattService(serviceUUID, BluetoothGattService.SERVICE_TYPE_PRIMARY);
+
+            JSONArray jsCharacteristics = jsService.optJSONArray(Metadata.CHARACTERISTICS);
+            for (int j = 0; jsCharacteristics != null && j < jsCharacteristics.length(); j++) {
+                JSONObject jsCharacteristic = jsCharacteristics.optJSONObject(j);
+                UUID characteristicUUID = jsCharacteristic != null ?
+                        UUIDConverter.convert(jsCharacteristic.optString(Metadata.UUID, "")) : null;
+                if (characteristicUUID == null) {
+                    return null;
+                }
+
+                BluetoothGattCharacteristic characteristic = new BluetoothGattCharacteristic(characteristicUUID,
+                        toProperties(jsCharacteristic.optJSONArray(Metadata.PROPERTIES)),
+                        BluetoothGattCharacteristic.PERMISSION_READ | BluetoothGattCharacteristic.PERMISSION_WRITE);
+                service.addCharacteristic(characteristic);
+
+                String value = jsCharacteristic.optString(Metadata.VALUE, "");
+                if (value.length() > 0) {
+                    try {
+                        values.put(characteristic, Base64.decode(value, Base64.DEFAULT));
+                    } catch (IllegalArgumentException ex) {
+                        return null;
+                    }
+                }
+            }
+
+            services.add(service);
+        }
+
+        SimulatedPeripheral peripheral = new SimulatedPeripheral(macAddress,
+                js.optString(Metadata.NAME, null),
+                js.optInt(Metadata.RSSI, DEFAULT_RSSI),
+                services,
+                SimulationProfile.fromJS(js.optJSONObject(Metadata.PROFILE)));
+        peripheral.values.putAll(values);
+        return peripheral;
+    }
+
+    /**
+     * @return the emission time written by a simulated notification, -1 when the payload is too short
+     */
+    public static long getSentAtNanos(byte[] payload) {
+        return payload != null && payload.length >= 8 ? ByteBuffer.wrap(payload).getLong(0) : -1;
+    }
+
+    // the backend shares its scheduler and random source with all its peripherals
+    void attach(Scheduler scheduler, Random random) {
+        this.scheduler = scheduler;
+        this.random = random;
+    }
+
+    @Override
+    public String getMacAddress() {
+        return macAddress;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connections.get() > 0;
+    }
+
+    public int getRssi() {
+        return rssi;
+    }
+
+    public List<BluetoothGattService> getServices() {
+        return services;
+    }
+
+    public SimulationProfile getProfile() {
+        return profile;
+    }
+
+    public byte[] getScanRecord() {
+        return scanRecord;
+    }
+
+    /**
+     * @return whether all the given services are advertised
+     */
+    boolean advertises(UUID[] serviceUUIDs) {
+        for (UUID serviceUUID : serviceUUIDs) {
+            boolean found = false;
+            for (BluetoothGattService service : services) {
+                if (service.getUuid().equals(serviceUUID)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Observable<BleConnection> establishConnection(boolean autoConnect) {
+        return Observable.defer(new Func0<Observable<BleConnection>>() {
+            @Override
+            public Observable<BleConnection> call() {
+                final AtomicBoolean established = new AtomicBoolean();
+
+                return Observable.timer(profile.getConnectLatencyMs(), TimeUnit.MILLISECONDS, scheduler)
+                        .flatMap(new Func1<Long, Observable<BleConnection>>() {
+                            @Override
+                            public Observable<BleConnection> call(Long tick) {
+                                if (profile.nextFails(random)) {
+                                    return Observable.error(new SimulatedGattException("connection", macAddress));
+                                }
+                                // like a real connection, it lasts until unsubscribed
+                                return Observable.<BleConnection>just(new Connection())
+                                        .concatWith(Observable.<BleConnection>never());
+                            }
+                        })
+                        .doOnNext(new Action1<BleConnection>() {
+                            @Override
+                            public void call(BleConnection connection) {
+                                established.set(true);
+                                connections.incrementAndGet();
+                            }
+                        })
+                        .doOnUnsubscribe(new Action0() {
+                            @Override
+                            public void call() {
+                                if (established.compareAndSet(true, false)) {
+                                    connections.decrementAndGet();
+                                }
+                            }
+                        });
+            }
+        });
+    }
+
+    private class Connection implements BleConnection {
+
+        @Override
+        public Observable<RxBleDeviceServices> discoverServices() {
+            return respond("discovery", new Func0<RxBleDeviceServices>() {
+                @Override
+                public RxBleDeviceServices call() {
+                    return new RxBleDeviceServices(services);
+                }
+            });
+        }
+
+        @Override
+        public Observable<byte[]> readCharacteristic(final BluetoothGattCharacteristic characteristic) {
+            return respond("read", new Func0<byte[]>() {
+                @Override
+                public byte[] call() {
+                    byte[] value = values.get(characteristic);
+                    return value != null ? value.clone() : new byte[0];
+                }
+            });
+        }
+
+        @Override
+        public Observable<byte[]> writeCharacteristic(final BluetoothGattCharacteristic characteristic, byte[] value) {
+            final byte[] written = value.clone();
+            return respond("write", new Func0<byte[]>() {
+                @Override
+                public byte[] call() {
+                    values.put(characteristic, written);
+                    return written;
+                }
+            });
+        }
+
+        @Override
+        public Observable<Observable<byte[]>> setupNotification(BluetoothGattCharacteristic characteristic) {
+            return respond("notification setup", new Func0<Observable<byte[]>>() {
+                @Override
+                public Observable<byte[]> call() {
+                    return Observable.interval(profile.getNotificationPeriodMicros(), TimeUnit.MICROSECONDS, scheduler)
+                            .onBackpressureDrop()
+                            .map(new Func1<Long, byte[]>() {
+                                @Override
+                                public byte[] call(Long sequence) {
+                                    return createNotification(sequence, profile.getNotificationSize());
+                                }
+                            });
+                }
+            });
+        }
+
+        @Override
+        public Observable<Integer> requestMtu(final int mtu) {
+            return respond("MTU request", new Func0<Integer>() {
+                @Override
+                public Integer call() {
+                    return Math.min(mtu, SimulationProfile.MAX_MTU);
+                }
+            });
+        }
+
+        @Override
+        public Completable requestConnectionPriority(int connectionPriority, long delay, TimeUnit timeUnit) {
+            return respond("connection priority request", new Func0<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return true;
+                }
+            }).toCompletable();
+        }
+    }
+
+    // Answers after the latency of the profile, or fails at its failure rate. Both are drawn
+    // at subscription time so every operation gets its own.
+    private <T> Observable<T> respond(final String operation, final Func0<T> response) {
+        return Observable.defer(new Func0<Observable<T>>() {
+            @Override
+            public Observable<T> call() {
+                return Observable.timer(profile.nextLatencyMs(random), TimeUnit.MILLISECONDS, scheduler)
+                        .flatMap(new Func1<Long, Observable<T>>() {
+                            @Override
+                            public Observable<T> call(Long tick) {
+                                if (profile.nextFails(random)) {
+                                    return Observable.error(new SimulatedGattException(operation, macAddress));
+                                }
+                                return Observable.just(response.call());
+                            }
+                        });
+            }
+        });
+    }
+
+    private static byte[] createNotification(long sequence, int size) {
+        ByteBuffer payload = ByteBuffer.allocate(size);
+        if (size >= 8) {
+            payload.putLong(System.nanoTime());
+        }
+        if (size >= 12) {
+            payload.putInt((int) sequence);
+        }
+        return payload.array();
+    }
+
+    // flags, complete local name and the 128 bit service UUIDs, little endian
+    private static byte[] createScanRecord(String name, List<BluetoothGattService> services) {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        record.write(2);
+        record.write(0x01);
+        record.write(0x06);
+
+        if (name != null) {
+            byte[] bytes = name.getBytes(UTF_8);
+            record.write(bytes.length + 1);
+            record.write(0x09);
+            record.write(bytes, 0, bytes.length);
+        }
+
+        if (!services.isEmpty()) {
+            record.write(services.size() * 16 + 1);
+            record.write(0x07);
+            for (BluetoothGattService service : services) {
+                ByteBuffer uuid = ByteBuffer.allocate(16)
+                        .putLong(service.getUuid().getMostSignificantBits())
+                        .putLong(service.getUuid().getLeastSignificantBits());
+                byte[] bytes = uuid.array();
+                for (int i = bytes.length - 1; i >= 0; i--) {
+                    record.write(bytes[i]);
+                }
+            }
+        }
+
+        return record.toByteArray();
+    }
+
+    private static int toProperties(JSONArray jsProperties) {
+        int properties = 0;
+        for (int i = 0; jsProperties != null && i < jsProperties.length(); i++) {
+            String property = jsProperties.optString(i, "");
+            if ("read".equals(property)) {
+                properties |= BluetoothGattCharacteristic.PROPERTY_READ;
+            } else if ("write".equals(property)) {
+                properties |= BluetoothGattCharacteristic.PROPERTY_WRITE;
+            } else if ("writeWithoutResponse".equals(property)) {
+                properties |= BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE;
+            } else if ("notify".equals(property)) {
+                properties |= BluetoothGattCharacteristic.PROPERTY_NOTIFY;
+            } else if ("indicate".equals(property)) {
+                properties |= BluetoothGattCharacteristic.PROPERTY_INDICATE;
+            }
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,117 @@
+package com.ksachdeva.opensource.ble.central.backend;
+
+import org.json.JSONObject;
+
+import java.util.Random;
+
+/**
+ * Timing and reliability of a simulated peripheral.
+ *
+ * Every GATT operation answers after latencyMs plus a uniform jitter of up to jitterMs
+ * and fails with a probability of failureRate. Notifying characteristics push
+ * notificationHz notifications per second of notificationSize bytes once set up.
+ */
+public class SimulationProfile {
+
+    static final long DEFAULT_LATENCY_MS = 10;
+    static final long DEFAULT_JITTER_MS = 5;
+    static final long DEFAULT_CONNECT_LATENCY_MS = 100;
+    static final long DEFAULT_ADVERTISING_INTERVAL_MS = 100;
+    static final double DEFAULT_NOTIFICATION_HZ = 10;
+    static final int DEFAULT_NOTIFICATION_SIZE = 20;
+    static final int MAX_MTU = 517;
+
+    private interface Metadata {
+        String LATENCY_MS = "latencyMs";
+        String JITTER_MS = "jitterMs";
+        String CONNECT_LATENCY_MS = "connectLatencyMs";
+        String ADVERTISING_INTERVAL_MS = "advertisingIntervalMs";
+        String NOTIFICATION_HZ = "notificationHz";
+        String NOTIFICATION_SIZE = "notificationSize";
+        String FAILURE_RATE = "failureRate";
+    }
+
+    private long latencyMs = DEFAULT_LATENCY_MS;
+    private long jitterMs = DEFAULT_JITTER_MS;
+    private long connectLatencyMs = DEFAULT_CONNECT_LATENCY_MS;
+    private long advertisingIntervalMs = DEFAULT_ADVERTISING_INTERVAL_MS;
+    private double notificationHz = DEFAULT_NOTIFICATION_HZ;
+    private int notificationSize = DEFAULT_NOTIFICATION_SIZE;
+    private double failureRate;
+
+    public static SimulationProfile fromJS(JSONObject js) {
+        SimulationProfile profile = new SimulationProfile();
+        if (js == null) {
+            return profile;
+        }
+
+        profile.latencyMs = Math.max(0, js.optLong(Metadata.LATENCY_MS, DEFAULT_LATENCY_MS));
+        profile.jitterMs = Math.max(0, js.optLong(Metadata.JITTER_MS, DEFAULT_JITTER_MS));
+        profile.connectLatencyMs = Math.max(0, js.optLong(Metadata.CONNECT_LATENCY_MS, DEFAULT_CONNECT_LATENCY_MS));
+
+        long advertisingIntervalMs = js.optLong(Metadata.ADVERTISING_INTERVAL_MS, DEFAULT_ADVERTISING_INTERVAL_MS);
+        if (advertisingIntervalMs > 0) {
+            profile.advertisingIntervalMs = advertisingIntervalMs;
+        }
+
+        double notificationHz = js.optDouble(Metadata.NOTIFICATION_HZ, DEFAULT_NOTIFICATION_HZ);
+        if (notificationHz > 0) {
+            profile.notificationHz = notificationHz;
+        }
+
+        int notificationSize = js.optInt(Metadata.NOTIFICATION_SIZE, DEFAULT_NOTIFICATION_SIZE);
+        if (notificationSize > 0) {
+            profile.notificationSize = notificationSize;
+        }
+
+        double failureRate = js.optDouble(Metadata.FAILURE_RATE, 0);
+        if (failureRate >= 0 && failureRate <= 1) {
+            profile.failureRate = failureRate;
+        }
+
+        return profile;
+    }
+
+    long nextLatencyMs(Random random) {
+        return latencyMs + (jitterMs > 0 ? (long) (random.nextDouble() * jitterMs) : 0);
+    }
+
+    boolean nextFails(Random random) {
+        return failureRate > 0 && random.nextDouble() < failureRate;
+    }
+
+    public long getLatencyMs() {
+        return latencyMs;
+    }
+
+    public long getJitterMs() {
+        return jitterMs;
+    }
+
+    public long getConnectLatencyMs() {
+        return connectLatencyMs;
+    }
+
+    public long getAdvertisingIntervalMs() {
+        return advertisingIntervalMs;
+    }
+
+    public double getNotificationHz() {
+        return notificationHz;
+    }
+
+    /**
+     * @return the period between two notifications, in microseconds
+     */
+    public long getNotificationPeriodMicros() {
+        return Math.max(1, (long) (1000000 / notificationHz));
+    }
+
+    public int getNotificationSize() {
+        return notificationSize;
+    }
+
+    public double getFailureRate() {
+        return failureRate;
+    }
+}
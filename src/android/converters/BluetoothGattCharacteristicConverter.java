@@ -7,7 +7,13 @@ import android.util.Base64;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.ksachdeva.opensource.ble.central.utils.JsonWriter;
+import com.ksachdeva.opensource.ble.central.utils.UUIDConverter;
+
+import java.util.Collections;
+import java.util.Map;
 import java.util.UUID;
+import java.util.WeakHashMap;
 
 public class BluetoothGattCharacteristicConverter {
 
@@ -22,30 +28,41 @@ public class BluetoothGattCharacteristicConverter {
         String IS_NOTIFYING = "isNotifying";
         String IS_INDICTABLE = "isIndictable";
         String VALUE = "value";
+        String DEVICE_UUID = "deviceUUID";
+        String SERVICE_UUID = "serviceUUID";
     }
 
+    // Serialized static metadata of the characteristics. BluetoothGattCharacteristic instances
+    // belong to one connection and use identity equality, entries go away with their connection.
+    private final Map<BluetoothGattCharacteristic, String> staticMetadata =
+            Collections.synchronizedMap(new WeakHashMap<BluetoothGattCharacteristic, String>());
+
     public JSONObject toJSObject(BluetoothGattCharacteristic value) {
+        JSONObject js = toMetadataJSObject(value);
+
+        try {
+            js.put(Metadata.VALUE, value.getValue() != null ? Base64.encodeToString(value.getValue(), Base64.DEFAULT) : null);
+        } catch (JSONException ex) {
+            // ignored !!
+        }
+
+        return js;
+    }
+
+    // Same as toJSObject but without the value, used when the value travels as an ArrayBuffer
+    public JSONObject toMetadataJSObject(BluetoothGattCharacteristic value) {
         JSONObject js = new JSONObject();
 
         try {
 
-            js.put(Metadata.UUID, value.getUuid().toString());
+            js.put(Metadata.UUID, UUIDConverter.fromUUID(value.getUuid()));
             js.put(Metadata.IS_READABLE, (value.getProperties() & BluetoothGattCharacteristic.PROPERTY_READ) != 0);
             js.put(Metadata.IS_WRITABLE_WITH_RESPONSE, (value.getProperties() & BluetoothGattCharacteristic.PROPERTY_WRITE) != 0);
             js.put(Metadata.IS_WRITABLE_WITHOUT_RESPONSE, (value.getProperties() & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) != 0);
             js.put(Metadata.IS_NOTIFIABLE, (value.getProperties() & BluetoothGattCharacteristic.PROPERTY_NOTIFY) != 0);
             js.put(Metadata.IS_INDICTABLE, (value.getProperties() & BluetoothGattCharacteristic.PROPERTY_INDICATE) != 0);
 
-            BluetoothGattDescriptor descriptor = value.getDescriptor(CLIENT_CHARACTERISTIC_CONFIG_UUID);
-            boolean isNotifying = false;
-            if (descriptor != null) {
-                byte[] descriptorValue = descriptor.getValue();
-                if (descriptorValue != null) {
-                    isNotifying = (descriptorValue[0] & 0x01) != 0;
-                }
-            }
-            js.put(Metadata.IS_NOTIFYING, isNotifying);
-            js.put(Metadata.VALUE, value.getValue() != null ? Base64.encodeToString(value.getValue(), Base64.DEFAULT) : null);
+            js.put(Metadata.IS_NOTIFYING, isNotifying(value));
 
         }catch (JSONException ex) {
             // ignored !!
@@ -53,4 +70,45 @@ public class BluetoothGattCharacteristicConverter {
 
         return js;
     }
+
+    // Streaming version of toMetadataJSObject along with the device and service UUIDs, writes
+    // the fields into the current object. Only isNotifying is computed on every call.
+    public void writeMetadataTo(JsonWriter writer, BluetoothGattCharacteristic value, String deviceId, String serviceUUID) {
+        String fields = staticMetadata.get(value);
+        if (fields == null) {
+            fields = staticMetadataToJSON(value, deviceId, serviceUUID);
+            staticMetadata.put(value, fields);
+        }
+        writer.rawFields(fields);
+        writeNotifyingTo(writer, value);
+    }
+
+    public void writeNotifyingTo(JsonWriter writer, BluetoothGattCharacteristic value) {
+        writer.name(Metadata.IS_NOTIFYING).value(isNotifying(value));
+    }
+
+    private static String staticMetadataToJSON(BluetoothGattCharacteristic value, String deviceId, String serviceUUID) {
+        int properties = value.getProperties();
+        JsonWriter writer = new JsonWriter();
+        writer.name(Metadata.UUID).value(UUIDConverter.fromUUID(value.getUuid()));
+        writer.name(Metadata.IS_READABLE).value((properties & BluetoothGattCharacteristic.PROPERTY_READ) != 0);
+        writer.name(Metadata.IS_WRITABLE_WITH_RESPONSE).value((properties & BluetoothGattCharacteristic.PROPERTY_WRITE) != 0);
+        writer.name(Metadata.IS_WRITABLE_WITHOUT_RESPONSE).value((properties & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) != 0);
+        writer.name(Metadata.IS_NOTIFIABLE).value((properties & BluetoothGattCharacteristic.PROPERTY_NOTIFY) != 0);
+        writer.name(Metadata.IS_INDICTABLE).value((properties & BluetoothGattCharacteristic.PROPERTY_INDICATE) != 0);
+        writer.name(Metadata.DEVICE_UUID).value(deviceId);
+        writer.name(Metadata.SERVICE_UUID).value(serviceUUID);
+        return writer.toString();
+    }
+
+    private static boolean isNotifying(BluetoothGattCharacteristic value) {
+        BluetoothGattDescriptor descriptor = value.getDescriptor(CLIENT_CHARACTERISTIC_CONFIG_UUID);
+        if (descriptor != null) {
+            byte[] descriptorValue = descriptor.getValue();
+            if (descriptorValue != null) {
+                return (descriptorValue[0] & 0x01) != 0;
+            }
+        }
+        return false;
+    }
 }
@@ -5,6 +5,8 @@ import android.bluetooth.BluetoothGattService;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.ksachdeva.opensource.ble.central.utils.UUIDConverter;
+
 public class BluetoothGattServiceConverter {
     private interface Metadata {
         String UUID = "uuid";
@@ -14,7 +16,7 @@ public class BluetoothGattServiceConverter {
     public JSONObject toJSObject(BluetoothGattService value) {
         JSONObject result = new JSONObject();
         try {
-            result.put(Metadata.UUID, value.getUuid().toString());
+            result.put(Metadata.UUID, UUIDConverter.fromUUID(value.getUuid()));
             result.put(Metadata.IS_PRIMARY, value.getType() == BluetoothGattService.SERVICE_TYPE_PRIMARY);
         }catch(JSONException ex) {
             // ignored !
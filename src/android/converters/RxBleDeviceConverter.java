@@ -4,7 +4,7 @@ import org.json.JSONObject;
 import org.json.JSONArray;
 import org.json.JSONException;
 
-import com.polidea.rxandroidble.RxBleDevice;
+import com.ksachdeva.opensource.ble.central.backend.BleDevice;
 
 public class RxBleDeviceConverter  {
 
@@ -15,7 +15,7 @@ public class RxBleDeviceConverter  {
         String CONNECTABLE = "isConnectable";
     }
 
-    public JSONObject toJSObject(RxBleDevice value) {
+    public JSONObject toJSObject(BleDevice value) {
         JSONObject result = new JSONObject();
 
         try {
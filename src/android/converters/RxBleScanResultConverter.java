@@ -4,7 +4,9 @@ import org.json.JSONObject;
 import org.json.JSONArray;
 import org.json.JSONException;
 
-import com.polidea.rxandroidble.RxBleScanResult;
+import com.ksachdeva.opensource.ble.central.backend.BleScanResult;
+
+import com.ksachdeva.opensource.ble.central.utils.JsonWriter;
 
 public class RxBleScanResultConverter {
 
@@ -15,7 +17,7 @@ public class RxBleScanResultConverter {
         String CONNECTABLE = "isConnectable";
     }
 
-    public JSONObject toJSObject(RxBleScanResult value) {
+    public JSONObject toJSObject(BleScanResult value) {
         JSONObject result = new JSONObject();
 
         try {
@@ -33,4 +35,15 @@ public class RxBleScanResultConverter {
         return result;
     }
 
+    // Streaming version of toJSObject, writes the fields into the current object.
+    // Like JSONObject.put, null values are left out.
+    public void writeTo(JsonWriter writer, BleScanResult value) {
+        writer.name(Metadata.UUID).value(value.getBleDevice().getMacAddress());
+        String name = value.getBleDevice().getName();
+        if (name != null) {
+            writer.name(Metadata.NAME).value(name);
+        }
+        writer.name(Metadata.RSSI).value(value.getRssi());
+    }
+
 }
@@ -41,4 +41,24 @@ public class BleError {
     static public Error invalidWriteDataForCharacteristic(String data, String uuid) {
         return new Error("Invalid base64 write data: " + data + " for characteristic " + uuid, 505);
     }
+
+    static public Error invalidConnectionPriority(String priority) {
+        return new Error("Invalid connection priority: " + priority, 506);
+    }
+
+    static public Error invalidAction(String action) {
+        return new Error("Invalid action: " + action, 507);
+    }
+
+    static public Error invalidArguments(String action) {
+        return new Error("Invalid arguments for action: " + action, 508);
+    }
+
+    static public Error invalidScanFilter() {
+        return new Error("Invalid scan filter, check nameRegex and the Base64 manufacturer data", 509);
+    }
+
+    static public Error timeout() {
+        return new Error("Operation timed out", 510);
+    }
 }
@@ -1,5 +1,7 @@
 package com.ksachdeva.opensource.ble.central.errors;
 
+import java.util.concurrent.TimeoutException;
+
 import com.polidea.rxandroidble.exceptions.BleAlreadyConnectedException;
 import com.polidea.rxandroidble.exceptions.BleCannotSetCharacteristicNotificationException;
 import com.polidea.rxandroidble.exceptions.BleCharacteristicNotFoundException;
@@ -7,9 +9,15 @@ import com.polidea.rxandroidble.exceptions.BleGattCannotStartException;
 import com.polidea.rxandroidble.exceptions.BleGattException;
 import com.polidea.rxandroidble.exceptions.BleScanException;
 
+import com.ksachdeva.opensource.ble.central.backend.SimulatedGattException;
+
 public class ErrorConverter {
 
     public Error toError(Throwable throwable) {
+        // raised by the transaction timeouts of the plugin
+        if (throwable instanceof TimeoutException) {
+            return BleError.timeout();
+        }
         if (throwable instanceof BleScanException) {
             return toError((BleScanException) throwable);
         }
@@ -22,7 +30,7 @@ public class ErrorConverter {
         if (throwable instanceof BleGattCannotStartException) {
             return new Error(throwable.toString(), 600);
         }
-        if (throwable instanceof BleGattException) {
+        if (throwable instanceof BleGattException || throwable instanceof SimulatedGattException) {
             return new Error(throwable.toString(), 700);
         }
         if (throwable instanceof BleCannotSetCharacteristicNotificationException) {
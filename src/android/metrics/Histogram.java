@@ -0,0 +1,96 @@
+package com.ksachdeva.opensource.ble.central.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Lock free latency histogram with fixed power of two buckets.
+ *
+ * Bucket i counts the durations in [2^(i-1), 2^i) microseconds, the last bucket
+ * everything above ~67 seconds. Recording is a couple of atomic increments, percentiles
+ * are approximated by the upper bound of the bucket they fall in.
+ */
+public class Histogram {
+
+    static final int BUCKET_COUNT = 28;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+
+        buckets.incrementAndGet(bucketOf(micros));
+        count.incrementAndGet();
+        totalMicros.addAndGet(micros);
+
+        long max = maxMicros.get();
+        while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+            max = maxMicros.get();
+        }
+    }
+
+    /**
+     * Records the time elapsed since the given {@link System#nanoTime()}.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalMicros.set(0);
+        maxMicros.set(0);
+    }
+
+    public JSONObject toJS() throws JSONException {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+
+        JSONObject jsObject = new JSONObject();
+        jsObject.put("count", total);
+        jsObject.put("meanMs", total == 0 ? 0 : totalMicros.get() / (total * 1000.0));
+        jsObject.put("maxMs", maxMicros.get() / 1000.0);
+        jsObject.put("p50Ms", percentile(snapshot, total, 0.5));
+        jsObject.put("p90Ms", percentile(snapshot, total, 0.9));
+        jsObject.put("p99Ms", percentile(snapshot, total, 0.99));
+        return jsObject;
+    }
+
+    private static int bucketOf(long micros) {
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+
+    private static double percentile(long[] snapshot, long total, double quantile) {
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(total * quantile);
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return (1L << i) / 1000.0;
+            }
+        }
+        return (1L << (snapshot.length - 1)) / 1000.0;
+    }
+}
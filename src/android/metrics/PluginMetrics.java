@@ -0,0 +1,132 @@
+package com.ksachdeva.opensource.ble.central.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Timings and counters of the plugin, exposed to JS by the getMetrics action.
+ *
+ * Action latency is the time from the call of the action to its first result, queue wait
+ * and GATT time come from the operation queues and serialization is the time spent turning
+ * values into plugin results.
+ */
+public class PluginMetrics {
+
+    private final ConcurrentHashMap<String, Histogram> actions = new ConcurrentHashMap<String, Histogram>();
+    private final Histogram queueWait = new Histogram();
+    private final Histogram gatt = new Histogram();
+    private final Histogram serialization = new Histogram();
+
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong notifications = new AtomicLong();
+    private final ConcurrentHashMap<Integer, AtomicLong> errors = new ConcurrentHashMap<Integer, AtomicLong>();
+
+    private long rateNotifications;
+    private long rateSince = System.nanoTime();
+
+    public Histogram action(String action) {
+        Histogram histogram = actions.get(action);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = actions.putIfAbsent(action, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    public Histogram getQueueWait() {
+        return queueWait;
+    }
+
+    public Histogram getGatt() {
+        return gatt;
+    }
+
+    public Histogram getSerialization() {
+        return serialization;
+    }
+
+    public void onBytesIn(int count) {
+        bytesIn.addAndGet(count);
+    }
+
+    public void onBytesOut(int count) {
+        bytesOut.addAndGet(count);
+    }
+
+    public void onNotification(int size) {
+        notifications.incrementAndGet();
+        bytesIn.addAndGet(size);
+    }
+
+    public void onError(int code) {
+        AtomicLong counter = errors.get(code);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = errors.putIfAbsent(code, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    public synchronized void reset() {
+        for (Histogram histogram : actions.values()) {
+            histogram.reset();
+        }
+        queueWait.reset();
+        gatt.reset();
+        serialization.reset();
+        bytesIn.set(0);
+        bytesOut.set(0);
+        notifications.set(0);
+        errors.clear();
+        rateNotifications = 0;
+        rateSince = System.nanoTime();
+    }
+
+    /**
+     * The notification rate is computed over the time elapsed since the previous snapshot.
+     */
+    public synchronized JSONObject toJS(int activeTransactions) throws JSONException {
+        JSONObject jsActions = new JSONObject();
+        for (Map.Entry<String, Histogram> entry : actions.entrySet()) {
+            jsActions.put(entry.getKey(), entry.getValue().toJS());
+        }
+
+        JSONObject jsErrors = new JSONObject();
+        for (Map.Entry<Integer, AtomicLong> entry : errors.entrySet()) {
+            jsErrors.put(String.valueOf(entry.getKey()), entry.getValue().get());
+        }
+
+        long now = System.nanoTime();
+        long notificationCount = notifications.get();
+        double elapsedSeconds = (now - rateSince) / 1e9;
+        double notificationsPerSecond = elapsedSeconds > 0 ?
+                (notificationCount - rateNotifications) / elapsedSeconds :
+                0;
+        rateNotifications = notificationCount;
+        rateSince = now;
+
+        JSONObject jsObject = new JSONObject();
+        jsObject.put("actions", jsActions);
+        jsObject.put("queueWait", queueWait.toJS());
+        jsObject.put("gatt", gatt.toJS());
+        jsObject.put("serialization", serialization.toJS());
+        jsObject.put("bytesIn", bytesIn.get());
+        jsObject.put("bytesOut", bytesOut.get());
+        jsObject.put("notifications", notificationCount);
+        jsObject.put("notificationsPerSecond", notificationsPerSecond);
+        jsObject.put("errors", jsErrors);
+        jsObject.put("activeTransactions", activeTransactions);
+        return jsObject;
+    }
+}
@@ -0,0 +1,43 @@
+package com.ksachdeva.opensource.ble.central.metrics;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+
+/**
+ * Callback context that records the time from the call of an action to its first result.
+ */
+public class TimedCallbackContext extends CallbackContext {
+
+    private final CallbackContext callbackContext;
+    private final PluginMetrics metrics;
+    private final String action;
+    private final long startNanos = System.nanoTime();
+
+    private volatile boolean recorded;
+
+    public TimedCallbackContext(CallbackContext callbackContext, PluginMetrics metrics, String action) {
+        super(callbackContext.getCallbackId(), null);
+        this.callbackContext = callbackContext;
+        this.metrics = metrics;
+        this.action = action;
+    }
+
+    @Override
+    public void sendPluginResult(PluginResult pluginResult) {
+        if (!recorded) {
+            recorded = true;
+            metrics.action(action).recordSince(startNanos);
+        }
+        callbackContext.sendPluginResult(pluginResult);
+    }
+
+    @Override
+    public boolean isFinished() {
+        return callbackContext.isFinished();
+    }
+
+    @Override
+    public boolean isChangingThreads() {
+        return callbackContext.isChangingThreads();
+    }
+}
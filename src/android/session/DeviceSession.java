@@ -0,0 +1,176 @@
+package com.ksachdeva.opensource.ble.central.session;
+
+import com.ksachdeva.opensource.ble.central.backend.BleConnection;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.subscriptions.SerialSubscription;
+
+/**
+ * Everything the plugin knows about one device between connectToDevice and its
+ * disconnection: the connection, its negotiated MTU, the cached GATT attributes,
+ * the shared notifications, the subscriptions of its transactions and the queue its
+ * GATT operations run through.
+ *
+ * A new session is opened for every connection attempt, so callbacks of a previous
+ * connection of the same device can never alter the current one.
+ */
+public class DeviceSession {
+
+    public static final int DEFAULT_MTU = 23;
+
+    /**
+     * A read, write or monitor transaction of the device. It is registered before its chain
+     * is subscribed, so a chain that terminates during subscribe can not leak its entry.
+     */
+    public static class Transaction {
+        private final String id;
+        private final Action0 onClosed;
+        private final SerialSubscription subscription = new SerialSubscription();
+
+        Transaction(String id, Action0 onClosed) {
+            this.id = id;
+            this.onClosed = onClosed;
+        }
+
+        /**
+         * Unsubscribed right away when the transaction already ended.
+         */
+        public void setSubscription(Subscription subscription) {
+            this.subscription.set(subscription);
+        }
+    }
+
+    public enum State {
+        CONNECTING,
+        CONNECTED,
+        DISCONNECTED
+    }
+
+    private final String deviceId;
+    private final GattAttributeCache attributes = new GattAttributeCache();
+    private final NotificationHub notifications = new NotificationHub();
+    private final ConcurrentHashMap<String, Transaction> transactions = new ConcurrentHashMap<String, Transaction>();
+    private final OperationQueue operations;
+
+    private volatile State state = State.CONNECTING;
+    private volatile BleConnection connection;
+    private volatile int mtu = DEFAULT_MTU;
+
+    DeviceSession(String deviceId, OperationQueue operations) {
+        this.deviceId = deviceId;
+        this.operations = operations;
+    }
+
+    public synchronized void onConnected(BleConnection connection) {
+        if (state == State.DISCONNECTED) {
+            return;
+        }
+        attributes.clear();
+        this.mtu = DEFAULT_MTU;
+        this.connection = connection;
+        this.state = State.CONNECTED;
+    }
+
+    void onDisconnected() {
+        synchronized (this) {
+            state = State.DISCONNECTED;
+            connection = null;
+            attributes.clear();
+            notifications.clear();
+        }
+        // outside of the lock, the transactions still running are told their device is gone
+        for (Transaction transaction : new ArrayList<Transaction>(transactions.values())) {
+            close(transaction);
+        }
+    }
+
+    /**
+     * Registers a transaction of the device, ending the one with the same id.
+     *
+     * @param onClosed rejects the transaction when the session closes before it ended, it
+     *                 runs once the transaction is unsubscribed
+     */
+    public Transaction beginTransaction(String transactionId, Action0 onClosed) {
+        Transaction transaction = new Transaction(transactionId, onClosed);
+        Transaction previous = transactions.put(transactionId, transaction);
+        if (previous != null) {
+            previous.subscription.unsubscribe();
+        }
+        if (state == State.DISCONNECTED) {
+            close(transaction);
+        }
+        return transaction;
+    }
+
+    /**
+     * Ends the transaction, it is only removed if it still is the one registered under its id.
+     */
+    public void endTransaction(Transaction transaction) {
+        transactions.remove(transaction.id, transaction);
+        transaction.subscription.unsubscribe();
+    }
+
+    /**
+     * Cancels the transaction with the given id without rejecting it.
+     */
+    public boolean removeTransaction(String transactionId) {
+        Transaction transaction = transactions.remove(transactionId);
+        if (transaction == null) {
+            return false;
+        }
+        transaction.subscription.unsubscribe();
+        return true;
+    }
+
+    public int getTransactionCount() {
+        return transactions.size();
+    }
+
+    private void close(Transaction transaction) {
+        // the transaction may have ended in the meantime, it is then left alone
+        if (transactions.remove(transaction.id, transaction)) {
+            transaction.subscription.unsubscribe();
+            transaction.onClosed.call();
+        }
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isConnected() {
+        return state == State.CONNECTED;
+    }
+
+    public BleConnection getConnection() {
+        return connection;
+    }
+
+    public int getMtu() {
+        return mtu;
+    }
+
+    public void setMtu(int mtu) {
+        this.mtu = mtu;
+    }
+
+    public GattAttributeCache getAttributes() {
+        return attributes;
+    }
+
+    public NotificationHub getNotifications() {
+        return notifications;
+    }
+
+    public OperationQueue getOperations() {
+        return operations;
+    }
+}
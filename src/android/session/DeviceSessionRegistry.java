@@ -0,0 +1,64 @@
+package com.ksachdeva.opensource.ble.central.session;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread safe registry of the device sessions, keyed by MAC address.
+ *
+ * It is written from the RxAndroidBle callback threads and read from the Cordova
+ * threads of every GATT action, lookups never block.
+ */
+public class DeviceSessionRegistry {
+
+    private final ConcurrentHashMap<String, DeviceSession> sessions = new ConcurrentHashMap<String, DeviceSession>();
+    private final OperationScheduler scheduler;
+
+    public DeviceSessionRegistry(OperationScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Opens a new session for a connection attempt, replacing the previous one of the device.
+     */
+    public DeviceSession open(String deviceId) {
+        DeviceSession session = new DeviceSession(deviceId, scheduler.createQueue());
+        DeviceSession previous = sessions.put(deviceId, session);
+        if (previous != null) {
+            previous.onDisconnected();
+        }
+        return session;
+    }
+
+    public DeviceSession get(String deviceId) {
+        return sessions.get(deviceId);
+    }
+
+    /**
+     * @return the session of the device when it is connected, null otherwise
+     */
+    public DeviceSession getConnected(String deviceId) {
+        DeviceSession session = sessions.get(deviceId);
+        return session != null && session.isConnected() ? session : null;
+    }
+
+    public Collection<DeviceSession> getAll() {
+        return new ArrayList<DeviceSession>(sessions.values());
+    }
+
+    /**
+     * Closes the session, it is only removed from the registry if it still is the current
+     * session of its device.
+     */
+    public void close(DeviceSession session) {
+        sessions.remove(session.getDeviceId(), session);
+        session.onDisconnected();
+    }
+
+    public void clear() {
+        for (DeviceSession session : getAll()) {
+            close(session);
+        }
+    }
+}
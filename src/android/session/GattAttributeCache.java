@@ -0,0 +1,54 @@
+package com.ksachdeva.opensource.ble.central.session;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+import android.support.v4.util.Pair;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import com.polidea.rxandroidble.RxBleDeviceServices;
+
+/**
+ * Index of (service UUID, characteristic UUID) to characteristic for one connection.
+ *
+ * The index is filled once from the result of the first service discovery of the
+ * connection and is dropped when the device disconnects. It is rebuilt aside and
+ * published in one write so lookups never take a lock.
+ */
+public class GattAttributeCache {
+
+    private volatile Map<Pair<UUID, UUID>, BluetoothGattCharacteristic> attributes;
+
+    public void index(RxBleDeviceServices services) {
+        Map<Pair<UUID, UUID>, BluetoothGattCharacteristic> index =
+                new HashMap<Pair<UUID, UUID>, BluetoothGattCharacteristic>();
+
+        for (BluetoothGattService service : services.getBluetoothGattServices()) {
+            for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+                Pair<UUID, UUID> key = new Pair<UUID, UUID>(service.getUuid(), characteristic.getUuid());
+                // keep the first one when a service exposes the same characteristic twice
+                if (!index.containsKey(key)) {
+                    index.put(key, characteristic);
+                }
+            }
+        }
+
+        attributes = index;
+    }
+
+    public boolean isIndexed() {
+        return attributes != null;
+    }
+
+    public BluetoothGattCharacteristic get(UUID serviceUUID, UUID charUUID) {
+        Map<Pair<UUID, UUID>, BluetoothGattCharacteristic> index = attributes;
+        if (index == null) return null;
+        return index.get(new Pair<UUID, UUID>(serviceUUID, charUUID));
+    }
+
+    public void clear() {
+        attributes = null;
+    }
+}
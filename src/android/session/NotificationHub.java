@@ -0,0 +1,71 @@
+package com.ksachdeva.opensource.ble.central.session;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.support.v4.util.Pair;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Func0;
+
+/**
+ * Shared, reference counted notification streams of one device keyed by (service, characteristic).
+ *
+ * The first monitor transaction of a characteristic sets the notification up, the following
+ * ones subscribe to the same stream. The notification (and its CCCD) is torn down once the
+ * last transaction unsubscribes.
+ */
+public class NotificationHub {
+
+    private final Map<Pair<UUID, UUID>, Observable<Pair<BluetoothGattCharacteristic, byte[]>>> notifications =
+            new HashMap<Pair<UUID, UUID>, Observable<Pair<BluetoothGattCharacteristic, byte[]>>>();
+
+    public synchronized Observable<Pair<BluetoothGattCharacteristic, byte[]>> observe(
+            final UUID serviceUUID,
+            final UUID charUUID,
+            final Func0<Observable<Pair<BluetoothGattCharacteristic, byte[]>>> setupNotification) {
+
+        final Pair<UUID, UUID> key = new Pair<UUID, UUID>(serviceUUID, charUUID);
+
+        Observable<Pair<BluetoothGattCharacteristic, byte[]>> shared = notifications.get(key);
+        if (shared != null) {
+            return shared;
+        }
+
+        final AtomicReference<Observable<Pair<BluetoothGattCharacteristic, byte[]>>> self =
+                new AtomicReference<Observable<Pair<BluetoothGattCharacteristic, byte[]>>>();
+
+        final Action0 release = new Action0() {
+            @Override
+            public void call() {
+                release(key, self.get());
+            }
+        };
+
+        shared = Observable.defer(setupNotification)
+                .doOnTerminate(release)
+                .doOnUnsubscribe(release)
+                .share();
+
+        self.set(shared);
+        notifications.put(key, shared);
+
+        return shared;
+    }
+
+    public synchronized void clear() {
+        notifications.clear();
+    }
+
+    private synchronized void release(Pair<UUID, UUID> key,
+                                      Observable<Pair<BluetoothGattCharacteristic, byte[]>> shared) {
+        // the stream may already have been replaced by a new subscription
+        if (notifications.get(key) == shared) {
+            notifications.remove(key);
+        }
+    }
+}
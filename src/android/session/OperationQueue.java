@@ -0,0 +1,215 @@
+package com.ksachdeva.opensource.ble.central.session;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.functions.Action1;
+
+import com.ksachdeva.opensource.ble.central.metrics.Histogram;
+
+/**
+ * Serial queue of the GATT operations of one device.
+ *
+ * An operation is an observable that is only subscribed to once the operation running
+ * before it terminated, so the operations of a device run one at a time. Waiting operations
+ * are started by priority, then in FIFO order. A running operation is never interrupted,
+ * long transfers are queued chunk by chunk so that more urgent operations get in between
+ * two chunks. The subscription itself happens on the plugin executor. Queue depth and the
+ * time the operations waited before running are kept for monitoring.
+ */
+public class OperationQueue {
+
+    public enum Priority {
+        INTERACTIVE,
+        NORMAL,
+        BULK;
+
+        public static Priority fromJS(String value) {
+            if ("interactive".equals(value)) return INTERACTIVE;
+            if ("bulk".equals(value)) return BULK;
+            return NORMAL;
+        }
+    }
+
+    private static class Operation {
+        final Runnable start;
+        final Priority priority;
+        final long sequence;
+        final long enqueuedAt;
+
+        Operation(Runnable start, Priority priority, long sequence) {
+            this.start = start;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.enqueuedAt = System.nanoTime();
+        }
+    }
+
+    private static final Comparator<Operation> ORDER = new Comparator<Operation>() {
+        @Override
+        public int compare(Operation lhs, Operation rhs) {
+            int byPriority = lhs.priority.compareTo(rhs.priority);
+            if (byPriority != 0) {
+                return byPriority;
+            }
+            return lhs.sequence < rhs.sequence ? -1 : (lhs.sequence == rhs.sequence ? 0 : 1);
+        }
+    };
+
+    private final Executor executor;
+    private final Histogram queueWait;
+    private final Histogram gattTime;
+    private final Queue<Operation> pending = new PriorityQueue<Operation>(11, ORDER);
+
+    private long sequence;
+
+    private boolean running;
+
+    private long started;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+
+    OperationQueue(Executor executor, Histogram queueWait, Histogram gattTime) {
+        this.executor = executor;
+        this.queueWait = queueWait;
+        this.gattTime = gattTime;
+    }
+
+    /**
+     * Queues an operation, the queue is released once it terminates or is unsubscribed.
+     */
+    public <T> Observable<T> enqueue(final Observable<T> operation, final Priority priority) {
+        return enqueue(operation, priority, false);
+    }
+
+    /**
+     * Queues an operation that keeps running after it is set up (e.g. a notification),
+     * the queue is released with its first item.
+     */
+    public <T> Observable<T> enqueueSetup(final Observable<T> operation, final Priority priority) {
+        return enqueue(operation, priority, true);
+    }
+
+    private <T> Observable<T> enqueue(final Observable<T> operation,
+                                      final Priority priority,
+                                      final boolean releaseOnFirstItem) {
+        return Observable.create(new Observable.OnSubscribe<T>() {
+            @Override
+            public void call(final Subscriber<? super T> subscriber) {
+                final AtomicBoolean released = new AtomicBoolean();
+                final AtomicLong startedAt = new AtomicLong();
+                final Action0 release = new Action0() {
+                    @Override
+                    public void call() {
+                        if (released.compareAndSet(false, true)) {
+                            if (startedAt.get() != 0) {
+                                gattTime.recordSince(startedAt.get());
+                            }
+                            dispatchNext();
+                        }
+                    }
+                };
+
+                submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        // cancelled while it was waiting
+                        if (subscriber.isUnsubscribed()) {
+                            release.call();
+                            return;
+                        }
+
+                        Observable<T> queued = operation
+                                .doOnTerminate(release)
+                                .doOnUnsubscribe(release);
+
+                        if (releaseOnFirstItem) {
+                            queued = queued.doOnNext(new Action1<T>() {
+                                @Override
+                                public void call(T t) {
+                                    release.call();
+                                }
+                            });
+                        }
+
+                        try {
+                            startedAt.set(System.nanoTime());
+                            queued.unsafeSubscribe(subscriber);
+                        } catch (Throwable throwable) {
+                            release.call();
+                            subscriber.onError(throwable);
+                        }
+                    }
+                }, priority);
+            }
+        });
+    }
+
+    public synchronized int getDepth() {
+        return pending.size();
+    }
+
+    public synchronized int getDepth(Priority priority) {
+        int depth = 0;
+        for (Operation operation : pending) {
+            if (operation.priority == priority) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    public synchronized long getStarted() {
+        return started;
+    }
+
+    public synchronized double getAverageWaitMs() {
+        return started == 0 ? 0 : totalWaitNanos / (started * 1e6);
+    }
+
+    public synchronized double getMaxWaitMs() {
+        return maxWaitNanos / 1e6;
+    }
+
+    private void submit(Runnable start, Priority priority) {
+        synchronized (this) {
+            pending.add(new Operation(start, priority, sequence++));
+            if (running) {
+                return;
+            }
+            running = true;
+        }
+        dispatchNext();
+    }
+
+    private void dispatchNext() {
+        final Operation operation;
+        final long waitNanos;
+        synchronized (this) {
+            operation = pending.poll();
+            if (operation == null) {
+                running = false;
+                return;
+            }
+
+            waitNanos = System.nanoTime() - operation.enqueuedAt;
+            started++;
+            totalWaitNanos += waitNanos;
+            maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+        }
+
+        queueWait.record(waitNanos);
+        executor.execute(operation.start);
+    }
+}
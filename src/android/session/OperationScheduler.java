@@ -0,0 +1,58 @@
+package com.ksachdeva.opensource.ble.central.session;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ksachdeva.opensource.ble.central.metrics.Histogram;
+
+/**
+ * Small executor dedicated to the plugin, used instead of the Cordova thread pool which
+ * is shared with every other plugin.
+ *
+ * Operations of a device go through the {@link OperationQueue} of its session, which only
+ * hands one task at a time to this executor, so a busy device can not starve the others.
+ */
+public class OperationScheduler {
+
+    static final int THREAD_COUNT = 4;
+
+    private final ExecutorService executor;
+    private final Histogram queueWait;
+    private final Histogram gattTime;
+
+    /**
+     * @param queueWait records how long the operations waited in the queue of their device
+     * @param gattTime records how long the operations held the queue of their device
+     */
+    public OperationScheduler(Histogram queueWait, Histogram gattTime) {
+        this.queueWait = queueWait;
+        this.gattTime = gattTime;
+        executor = Executors.newFixedThreadPool(THREAD_COUNT, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "rx-ble-operation-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Runs work that is not bound to a device, e.g. scanning or connecting.
+     */
+    public void execute(Runnable runnable) {
+        executor.execute(runnable);
+    }
+
+    public OperationQueue createQueue() {
+        return new OperationQueue(executor, queueWait, gattTime);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
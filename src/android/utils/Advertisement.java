@@ -0,0 +1,283 @@
+package com.ksachdeva.opensource.ble.central.utils;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Advertising data of a scan record, decoded from its AD structures.
+ *
+ * The record is a sequence of [length][type][data] structures, length covering the type
+ * and the data. Multi-byte values are little endian.
+ */
+public class Advertisement {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    interface AdType {
+        int FLAGS = 0x01;
+        int INCOMPLETE_16_BIT_UUIDS = 0x02;
+        int COMPLETE_16_BIT_UUIDS = 0x03;
+        int INCOMPLETE_32_BIT_UUIDS = 0x04;
+        int COMPLETE_32_BIT_UUIDS = 0x05;
+        int INCOMPLETE_128_BIT_UUIDS = 0x06;
+        int COMPLETE_128_BIT_UUIDS = 0x07;
+        int SHORTENED_LOCAL_NAME = 0x08;
+        int COMPLETE_LOCAL_NAME = 0x09;
+        int TX_POWER_LEVEL = 0x0a;
+        int SERVICE_DATA_16_BIT = 0x16;
+        int SERVICE_DATA_32_BIT = 0x20;
+        int SERVICE_DATA_128_BIT = 0x21;
+        int MANUFACTURER_DATA = 0xff;
+    }
+
+    private interface Metadata {
+        String FLAGS = "flags";
+        String LOCAL_NAME = "localName";
+        String TX_POWER_LEVEL = "txPowerLevel";
+        String SERVICE_UUIDS = "serviceUUIDs";
+        String SERVICE_DATA = "serviceData";
+        String MANUFACTURER_DATA = "manufacturerData";
+        String COMPANY_ID = "companyId";
+        String DATA = "data";
+    }
+
+    /**
+     * Called for every AD structure of a record, with the bounds of its data.
+     */
+    interface StructureVisitor {
+        /**
+         * @return true to stop the walk
+         */
+        boolean visit(byte[] record, int type, int from, int length);
+    }
+
+    public static class ManufacturerData {
+        public final int companyId;
+        public final byte[] data;
+
+        ManufacturerData(int companyId, byte[] data) {
+            this.companyId = companyId;
+            this.data = data;
+        }
+    }
+
+    private int flags = -1;
+    private String localName;
+    private Integer txPowerLevel;
+    private final List<UUID> serviceUUIDs = new ArrayList<UUID>();
+    private final Map<UUID, byte[]> serviceData = new LinkedHashMap<UUID, byte[]>();
+    private final List<ManufacturerData> manufacturerData = new ArrayList<ManufacturerData>();
+
+    private String json;
+
+    /**
+     * Decodes the record, malformed trailing structures are ignored.
+     */
+    public static Advertisement parse(byte[] scanRecord) {
+        final Advertisement advertisement = new Advertisement();
+        walk(scanRecord, new StructureVisitor() {
+            @Override
+            public boolean visit(byte[] record, int type, int from, int length) {
+                advertisement.parseStructure(record, type, from, length);
+                return false;
+            }
+        });
+        return advertisement;
+    }
+
+    /**
+     * Walks the AD structures of the record in place, malformed trailing structures are ignored.
+     *
+     * @return true when the visitor stopped the walk
+     */
+    static boolean walk(byte[] scanRecord, StructureVisitor visitor) {
+        if (scanRecord == null) {
+            return false;
+        }
+
+        int offset = 0;
+        while (offset < scanRecord.length) {
+            int length = scanRecord[offset] & 0xff;
+            if (length == 0 || offset + length >= scanRecord.length) {
+                break;
+            }
+
+            int type = scanRecord[offset + 1] & 0xff;
+            if (visitor.visit(scanRecord, type, offset + 2, length - 1)) {
+                return true;
+            }
+
+            offset += length + 1;
+        }
+
+        return false;
+    }
+
+    private void parseStructure(byte[] record, int type, int from, int length) {
+        switch (type) {
+            case AdType.FLAGS:
+                if (length >= 1) {
+                    flags = record[from] & 0xff;
+                }
+                break;
+            case AdType.INCOMPLETE_16_BIT_UUIDS:
+            case AdType.COMPLETE_16_BIT_UUIDS:
+                for (int i = 0; i + 2 <= length; i += 2) {
+                    serviceUUIDs.add(UUIDConverter.fromShortUUID(readLittleEndian(record, from + i, 2)));
+                }
+                break;
+            case AdType.INCOMPLETE_32_BIT_UUIDS:
+            case AdType.COMPLETE_32_BIT_UUIDS:
+                for (int i = 0; i + 4 <= length; i += 4) {
+                    serviceUUIDs.add(UUIDConverter.fromShortUUID(readLittleEndian(record, from + i, 4)));
+                }
+                break;
+            case AdType.INCOMPLETE_128_BIT_UUIDS:
+            case AdType.COMPLETE_128_BIT_UUIDS:
+                for (int i = 0; i + 16 <= length; i += 16) {
+                    serviceUUIDs.add(longUUID(record, from + i));
+                }
+                break;
+            case AdType.SHORTENED_LOCAL_NAME:
+                // the complete name wins over the shortened one
+                if (localName == null) {
+                    localName = new String(record, from, length, UTF_8);
+                }
+                break;
+            case AdType.COMPLETE_LOCAL_NAME:
+                localName = new String(record, from, length, UTF_8);
+                break;
+            case AdType.TX_POWER_LEVEL:
+                if (length >= 1) {
+                    txPowerLevel = (int) record[from];
+                }
+                break;
+            case AdType.SERVICE_DATA_16_BIT:
+                if (length >= 2) {
+                    serviceData.put(UUIDConverter.fromShortUUID(readLittleEndian(record, from, 2)),
+                            Arrays.copyOfRange(record, from + 2, from + length));
+                }
+                break;
+            case AdType.SERVICE_DATA_32_BIT:
+                if (length >= 4) {
+                    serviceData.put(UUIDConverter.fromShortUUID(readLittleEndian(record, from, 4)),
+                            Arrays.copyOfRange(record, from + 4, from + length));
+                }
+                break;
+            case AdType.SERVICE_DATA_128_BIT:
+                if (length >= 16) {
+                    serviceData.put(longUUID(record, from),
+                            Arrays.copyOfRange(record, from + 16, from + length));
+                }
+                break;
+            case AdType.MANUFACTURER_DATA:
+                if (length >= 2) {
+                    manufacturerData.add(new ManufacturerData((int) readLittleEndian(record, from, 2),
+                            Arrays.copyOfRange(record, from + 2, from + length)));
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * @return the advertising flags, -1 when not advertised
+     */
+    public int getFlags() {
+        return flags;
+    }
+
+    public String getLocalName() {
+        return localName;
+    }
+
+    /**
+     * @return the TX power level in dBm, null when not advertised
+     */
+    public Integer getTxPowerLevel() {
+        return txPowerLevel;
+    }
+
+    public List<UUID> getServiceUUIDs() {
+        return Collections.unmodifiableList(serviceUUIDs);
+    }
+
+    public Map<UUID, byte[]> getServiceData() {
+        return Collections.unmodifiableMap(serviceData);
+    }
+
+    public List<ManufacturerData> getManufacturerData() {
+        return Collections.unmodifiableList(manufacturerData);
+    }
+
+    /**
+     * Serialized once, the advertisement does not change after being parsed.
+     */
+    public synchronized String toJSON() {
+        if (json == null) {
+            JsonWriter writer = new JsonWriter();
+            writeTo(writer);
+            json = writer.toString();
+        }
+        return json;
+    }
+
+    private void writeTo(JsonWriter writer) {
+        writer.beginObject();
+
+        if (flags >= 0) {
+            writer.name(Metadata.FLAGS).value(flags);
+        }
+        if (localName != null) {
+            writer.name(Metadata.LOCAL_NAME).value(localName);
+        }
+        if (txPowerLevel != null) {
+            writer.name(Metadata.TX_POWER_LEVEL).value(txPowerLevel);
+        }
+
+        writer.name(Metadata.SERVICE_UUIDS).beginArray();
+        for (UUID uuid : serviceUUIDs) {
+            writer.value(UUIDConverter.fromUUID(uuid));
+        }
+        writer.endArray();
+
+        writer.name(Metadata.SERVICE_DATA).beginObject();
+        for (Map.Entry<UUID, byte[]> entry : serviceData.entrySet()) {
+            writer.name(UUIDConverter.fromUUID(entry.getKey())).valueBase64(entry.getValue());
+        }
+        writer.endObject();
+
+        writer.name(Metadata.MANUFACTURER_DATA).beginArray();
+        for (ManufacturerData data : manufacturerData) {
+            writer.beginObject();
+            writer.name(Metadata.COMPANY_ID).value(data.companyId);
+            writer.name(Metadata.DATA).valueBase64(data.data);
+            writer.endObject();
+        }
+        writer.endArray();
+
+        writer.endObject();
+    }
+
+    private static long readLittleEndian(byte[] record, int from, int size) {
+        long value = 0;
+        for (int i = size - 1; i >= 0; i--) {
+            value = (value << 8) | (record[from + i] & 0xff);
+        }
+        return value;
+    }
+
+    private static UUID longUUID(byte[] record, int from) {
+        // 128 bit UUIDs are little endian too, the least significant half comes first
+        long leastSigBits = readLittleEndian(record, from, 8);
+        long mostSigBits = readLittleEndian(record, from + 8, 8);
+        return new UUID(mostSigBits, leastSigBits);
+    }
+}
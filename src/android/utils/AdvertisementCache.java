@@ -0,0 +1,68 @@
+package com.ksachdeva.opensource.ble.central.utils;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Last parsed advertisement of every device, keyed by MAC address.
+ *
+ * Devices advertise the same record over and over, a record is only parsed again when its
+ * hash, and then its bytes, differ from the cached one. The least recently seen devices are
+ * evicted once the capacity is reached.
+ */
+public class AdvertisementCache {
+
+    static final int DEFAULT_CAPACITY = 256;
+
+    private static class Entry {
+        final int hash;
+        final byte[] scanRecord;
+        final Advertisement advertisement;
+
+        Entry(int hash, byte[] scanRecord, Advertisement advertisement) {
+            this.hash = hash;
+            this.scanRecord = scanRecord;
+            this.advertisement = advertisement;
+        }
+    }
+
+    private final Map<String, Entry> entries;
+
+    public AdvertisementCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public AdvertisementCache(final int capacity) {
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public Advertisement get(String macAddress, byte[] scanRecord) {
+        int hash = Arrays.hashCode(scanRecord);
+
+        synchronized (entries) {
+            Entry entry = entries.get(macAddress);
+            if (entry != null && entry.hash == hash && Arrays.equals(entry.scanRecord, scanRecord)) {
+                return entry.advertisement;
+            }
+        }
+
+        // parsed outside of the lock, a concurrent parse of the same record is harmless
+        Advertisement advertisement = Advertisement.parse(scanRecord);
+        synchronized (entries) {
+            entries.put(macAddress, new Entry(hash, scanRecord, advertisement));
+        }
+        return advertisement;
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+}
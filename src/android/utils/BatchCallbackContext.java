@@ -0,0 +1,94 @@
+package com.ksachdeva.opensource.ble.central.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import rx.functions.Action1;
+
+/**
+ * Callback context of one command of an executeBatch call.
+ *
+ * Results are forwarded to the callback of the batch as a multipart message: an envelope
+ * { id, ok, keepCallback } followed by the parts of the original result. The callback of
+ * the batch is kept until every command sent its final result.
+ */
+public class BatchCallbackContext extends CallbackContext {
+
+    private final CallbackContext batchCallbackContext;
+    private final String id;
+    private final AtomicInteger pendingCommands;
+    private final Action1<Boolean> onFirstResult;
+
+    private boolean firstResultSent;
+    private boolean finished;
+
+    /**
+     * @param pendingCommands commands of the batch that did not send their final result yet,
+     *                        shared by all the commands of the batch
+     * @param onFirstResult   called with the outcome of the first result of the command
+     */
+    public BatchCallbackContext(CallbackContext batchCallbackContext,
+                                String id,
+                                AtomicInteger pendingCommands,
+                                Action1<Boolean> onFirstResult) {
+        super(batchCallbackContext.getCallbackId(), null);
+        this.batchCallbackContext = batchCallbackContext;
+        this.id = id;
+        this.pendingCommands = pendingCommands;
+        this.onFirstResult = onFirstResult;
+    }
+
+    @Override
+    public void sendPluginResult(PluginResult pluginResult) {
+        final boolean ok = pluginResult.getStatus() == PluginResult.Status.OK.ordinal();
+        final boolean isFinal = !pluginResult.getKeepCallback();
+        final boolean first;
+
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            finished = isFinal;
+            first = !firstResultSent;
+            firstResultSent = true;
+        }
+
+        JSONObject envelope = new JSONObject();
+        try {
+            envelope.put("id", id);
+            envelope.put("ok", ok);
+            envelope.put("keepCallback", !isFinal);
+        } catch (JSONException jsonEx) {
+            // ignored !!
+        }
+
+        List<PluginResult> parts = new ArrayList<PluginResult>();
+        parts.add(new PluginResult(PluginResult.Status.OK, envelope));
+        if (pluginResult.getMessageType() == PluginResult.MESSAGE_TYPE_MULTIPART) {
+            for (int i = 0; i < pluginResult.getMultipartMessagesSize(); i++) {
+                parts.add(pluginResult.getMultipartMessage(i));
+            }
+        } else {
+            parts.add(pluginResult);
+        }
+
+        PluginResult result = new PluginResult(PluginResult.Status.OK, parts);
+        result.setKeepCallback(!isFinal || pendingCommands.decrementAndGet() > 0);
+        batchCallbackContext.sendPluginResult(result);
+
+        if (first && onFirstResult != null) {
+            onFirstResult.call(ok);
+        }
+    }
+
+    @Override
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+}
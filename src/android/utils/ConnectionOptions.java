@@ -0,0 +1,52 @@
+package com.ksachdeva.opensource.ble.central.utils;
+
+import android.bluetooth.BluetoothGatt;
+
+import org.json.JSONObject;
+
+public class ConnectionOptions {
+
+    public static final int NO_CONNECTION_PRIORITY = -1;
+
+    private interface Metadata {
+        String MTU = "mtu";
+        String CONNECTION_PRIORITY = "connectionPriority";
+    }
+
+    private int mtu;
+    private int connectionPriority = NO_CONNECTION_PRIORITY;
+
+    public static ConnectionOptions fromJS(JSONObject js) {
+        ConnectionOptions options = new ConnectionOptions();
+        if (js == null) {
+            return options;
+        }
+
+        options.mtu = Math.max(0, js.optInt(Metadata.MTU, 0));
+        options.connectionPriority = connectionPriorityFromJS(js.optString(Metadata.CONNECTION_PRIORITY, null));
+
+        return options;
+    }
+
+    public static int connectionPriorityFromJS(String value) {
+        if ("high".equals(value)) return BluetoothGatt.CONNECTION_PRIORITY_HIGH;
+        if ("balanced".equals(value)) return BluetoothGatt.CONNECTION_PRIORITY_BALANCED;
+        if ("lowPower".equals(value)) return BluetoothGatt.CONNECTION_PRIORITY_LOW_POWER;
+        return NO_CONNECTION_PRIORITY;
+    }
+
+    /**
+     * MTU to request right after connecting, 0 to keep the default one.
+     */
+    public int getMtu() {
+        return mtu;
+    }
+
+    public boolean hasConnectionPriority() {
+        return connectionPriority != NO_CONNECTION_PRIORITY;
+    }
+
+    public int getConnectionPriority() {
+        return connectionPriority;
+    }
+}
@@ -0,0 +1,185 @@
+package com.ksachdeva.opensource.ble.central.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Registry of the devices seen while scanning, keyed by MAC address.
+ *
+ * Every scan result refreshes its device, the least recently seen devices are evicted
+ * once the capacity is reached. The RSSI is smoothed by a SmoothedRssi, like in the
+ * ScanDeduplicator. The raw advertising record is kept as is and only parsed
+ * when a query needs it.
+ */
+public class DiscoveredDevices {
+
+    static final int DEFAULT_CAPACITY = 256;
+
+    private static class Entry {
+        String name;
+        int rssi;
+        SmoothedRssi smoothedRssi;
+        long lastSeen;
+        byte[] scanRecord;
+    }
+
+    /**
+     * Snapshot of a device returned by a query.
+     */
+    public static class Device {
+        public final String macAddress;
+        public final String name;
+        public final int rssi;
+        public final int smoothedRssi;
+        public final long lastSeen;
+        public final byte[] scanRecord;
+
+        Device(String macAddress, Entry entry) {
+            this.macAddress = macAddress;
+            this.name = entry.name;
+            this.rssi = entry.rssi;
+            this.smoothedRssi = entry.smoothedRssi.round();
+            this.lastSeen = entry.lastSeen;
+            this.scanRecord = entry.scanRecord;
+        }
+    }
+
+    private static final Comparator<Device> BY_RSSI = new Comparator<Device>() {
+        @Override
+        public int compare(Device lhs, Device rhs) {
+            return rhs.smoothedRssi < lhs.smoothedRssi ? -1 : (rhs.smoothedRssi == lhs.smoothedRssi ? 0 : 1);
+        }
+    };
+
+    private static final Comparator<Device> BY_LAST_SEEN = new Comparator<Device>() {
+        @Override
+        public int compare(Device lhs, Device rhs) {
+            return rhs.lastSeen < lhs.lastSeen ? -1 : (rhs.lastSeen == lhs.lastSeen ? 0 : 1);
+        }
+    };
+
+    private static final Comparator<Device> BY_NAME = new Comparator<Device>() {
+        @Override
+        public int compare(Device lhs, Device rhs) {
+            // unnamed devices come last
+            if (lhs.name == null) {
+                return rhs.name == null ? 0 : 1;
+            }
+            if (rhs.name == null) {
+                return -1;
+            }
+            return lhs.name.compareToIgnoreCase(rhs.name);
+        }
+    };
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private final AdvertisementCache advertisements;
+
+    private int capacity = DEFAULT_CAPACITY;
+    private double smoothing = SmoothedRssi.DEFAULT_SMOOTHING;
+
+    public DiscoveredDevices(AdvertisementCache advertisements) {
+        this.advertisements = advertisements;
+    }
+
+    /**
+     * Applies the capacity and the RSSI smoothing of a new scan, evicting the least
+     * recently seen devices when the capacity shrinks.
+     */
+    public synchronized void configure(int capacity, double smoothing) {
+        this.capacity = capacity;
+        this.smoothing = smoothing;
+        trim();
+    }
+
+    public synchronized void onScanResult(String macAddress, String name, int rssi, byte[] scanRecord, long now) {
+        Entry entry = entries.get(macAddress);
+
+        if (entry == null) {
+            entry = new Entry();
+            entry.smoothedRssi = new SmoothedRssi(rssi);
+            entries.put(macAddress, entry);
+            trim();
+        } else {
+            entry.smoothedRssi.update(rssi, smoothing);
+        }
+
+        // a scan response without the name does not clear the known one
+        if (name != null) {
+            entry.name = name;
+        }
+        entry.rssi = rssi;
+        entry.lastSeen = now;
+        if (scanRecord != null) {
+            entry.scanRecord = scanRecord;
+        }
+    }
+
+    public List<Device> query(DiscoveryQuery query, long now) {
+        List<Device> devices = new ArrayList<Device>();
+
+        synchronized (this) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                Entry value = entry.getValue();
+                if (query.acceptsEntry(value.name, value.smoothedRssi.round(), now - value.lastSeen)) {
+                    devices.add(new Device(entry.getKey(), value));
+                }
+            }
+        }
+
+        // the advertisement is the most expensive check, it runs outside of the lock
+        UUID serviceUUID = query.getServiceUUID();
+        if (serviceUUID != null) {
+            Iterator<Device> iterator = devices.iterator();
+            while (iterator.hasNext()) {
+                Device device = iterator.next();
+                if (!getAdvertisement(device).getServiceUUIDs().contains(serviceUUID)) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        switch (query.getSortBy()) {
+            case RSSI:
+                Collections.sort(devices, BY_RSSI);
+                break;
+            case NAME:
+                Collections.sort(devices, BY_NAME);
+                break;
+            default:
+                Collections.sort(devices, BY_LAST_SEEN);
+                break;
+        }
+
+        if (query.getLimit() > 0 && devices.size() > query.getLimit()) {
+            return new ArrayList<Device>(devices.subList(0, query.getLimit()));
+        }
+        return devices;
+    }
+
+    public Advertisement getAdvertisement(Device device) {
+        return advertisements.get(device.macAddress, device.scanRecord);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private void trim() {
+        Iterator<String> eldest = entries.keySet().iterator();
+        while (entries.size() > capacity && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.ksachdeva.opensource.ble.central.utils;
+
+import org.json.JSONObject;
+
+import java.util.UUID;
+
+public class DiscoveryQuery {
+
+    public enum SortBy {
+        LAST_SEEN, RSSI, NAME;
+
+        static SortBy fromJS(String value) {
+            if ("rssi".equals(value)) {
+                return RSSI;
+            }
+            if ("name".equals(value)) {
+                return NAME;
+            }
+            return LAST_SEEN;
+        }
+    }
+
+    private interface Metadata {
+        String NAME_PREFIX = "namePrefix";
+        String MIN_RSSI = "minRssi";
+        String MAX_AGE_MS = "maxAgeMs";
+        String SERVICE_UUID = "serviceUUID";
+        String SORT_BY = "sortBy";
+        String LIMIT = "limit";
+        String ADVERTISEMENT = "advertisement";
+    }
+
+    private String namePrefix;
+    private int minRssi = Integer.MIN_VALUE;
+    private long maxAgeMs;
+    private UUID serviceUUID;
+    private SortBy sortBy = SortBy.LAST_SEEN;
+    private int limit;
+    private boolean advertisement;
+
+    /**
+     * @return the query, or null when the service UUID is invalid
+     */
+    public static DiscoveryQuery fromJS(JSONObject js) {
+        DiscoveryQuery query = new DiscoveryQuery();
+        if (js == null) {
+            return query;
+        }
+
+        String namePrefix = js.optString(Metadata.NAME_PREFIX, "");
+        if (namePrefix.length() > 0) {
+            query.namePrefix = namePrefix;
+        }
+
+        if (js.has(Metadata.MIN_RSSI)) {
+            query.minRssi = js.optInt(Metadata.MIN_RSSI, Integer.MIN_VALUE);
+        }
+
+        query.maxAgeMs = Math.max(0, js.optLong(Metadata.MAX_AGE_MS, 0));
+
+        String serviceUUID = js.optString(Metadata.SERVICE_UUID, "");
+        if (serviceUUID.length() > 0) {
+            query.serviceUUID = UUIDConverter.convert(serviceUUID);
+            if (query.serviceUUID == null) {
+                return null;
+            }
+        }
+
+        query.sortBy = SortBy.fromJS(js.optString(Metadata.SORT_BY, null));
+        query.limit = Math.max(0, js.optInt(Metadata.LIMIT, 0));
+        query.advertisement = js.optBoolean(Metadata.ADVERTISEMENT, false);
+
+        return query;
+    }
+
+    boolean acceptsEntry(String name, int smoothedRssi, long ageMs) {
+        if (smoothedRssi < minRssi) {
+            return false;
+        }
+        if (maxAgeMs > 0 && ageMs > maxAgeMs) {
+            return false;
+        }
+        return namePrefix == null || (name != null && name.startsWith(namePrefix));
+    }
+
+    public UUID getServiceUUID() {
+        return serviceUUID;
+    }
+
+    public SortBy getSortBy() {
+        return sortBy;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public boolean isAdvertisementIncluded() {
+        return advertisement;
+    }
+}
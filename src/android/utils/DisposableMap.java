@@ -1,13 +1,13 @@
 package com.ksachdeva.opensource.ble.central.utils;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
 
 import rx.Subscription;
 
 public class DisposableMap {
 
-    private Map<String, Subscription> subscriptions = new HashMap<String, Subscription>();
+    private final ConcurrentHashMap<String, Subscription> subscriptions = new ConcurrentHashMap<String, Subscription>();
 
     public void replaceSubscription(String key, Subscription subscription) {
         Subscription oldSubscription = subscriptions.put(key, subscription);
@@ -25,12 +25,14 @@ public class DisposableMap {
         return true;
     }
 
+    public int size() {
+        return subscriptions.size();
+    }
+
     public void removeAllSubscriptions() {
-        for (Subscription subscription: subscriptions.values()) {
-            if (!subscription.isUnsubscribed()) {
-                subscription.unsubscribe();
-            }
+        // unsubscribing may remove other entries, work on a snapshot of the keys
+        for (String key : new ArrayList<String>(subscriptions.keySet())) {
+            removeSubscription(key);
         }
-        subscriptions.clear();
     }
 }
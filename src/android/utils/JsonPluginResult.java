@@ -0,0 +1,27 @@
+package com.ksachdeva.opensource.ble.central.utils;
+
+import org.apache.cordova.PluginResult;
+
+/**
+ * Plugin result carrying a JSON message that was already serialized, e.g. by a
+ * {@link JsonWriter}. The bridge receives it exactly like a JSONObject result.
+ */
+public class JsonPluginResult extends PluginResult {
+
+    private final String json;
+
+    public JsonPluginResult(Status status, String json) {
+        super(status);
+        this.json = json;
+    }
+
+    @Override
+    public int getMessageType() {
+        return MESSAGE_TYPE_JSON;
+    }
+
+    @Override
+    public String getMessage() {
+        return json;
+    }
+}
@@ -0,0 +1,231 @@
+package com.ksachdeva.opensource.ble.central.utils;
+
+/**
+ * Streaming JSON writer for the high frequency plugin results (scan results, notifications
+ * and reads), it writes straight into a per-thread reusable buffer instead of building a
+ * JSONObject tree that Cordova serializes again afterwards.
+ *
+ * Usage: {@code JsonWriter.obtain().beginObject().name("a").value(1).endObject().toString()}.
+ * The writer returned by {@link #obtain()} is reset on every call, a thread must be done with
+ * it before obtaining it again.
+ */
+public class JsonWriter {
+
+    static final int INITIAL_CAPACITY = 512;
+
+    // bigger buffers are not kept around between two results
+    static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final char[] BASE64 =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private static final ThreadLocal<JsonWriter> writers = new ThreadLocal<JsonWriter>() {
+        @Override
+        protected JsonWriter initialValue() {
+            return new JsonWriter();
+        }
+    };
+
+    private StringBuilder buffer = new StringBuilder(INITIAL_CAPACITY);
+    private boolean needsComma;
+
+    public static JsonWriter obtain() {
+        JsonWriter writer = writers.get();
+        writer.reset();
+        return writer;
+    }
+
+    private void reset() {
+        if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+            buffer = new StringBuilder(INITIAL_CAPACITY);
+        } else {
+            buffer.setLength(0);
+        }
+        needsComma = false;
+    }
+
+    public JsonWriter beginObject() {
+        separate();
+        buffer.append('{');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        buffer.append('}');
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter beginArray() {
+        separate();
+        buffer.append('[');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter endArray() {
+        buffer.append(']');
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter name(String name) {
+        separate();
+        quote(name);
+        buffer.append(':');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter value(String value) {
+        separate();
+        if (value == null) {
+            buffer.append("null");
+        } else {
+            quote(value);
+        }
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value(boolean value) {
+        separate();
+        buffer.append(value);
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value(long value) {
+        separate();
+        buffer.append(value);
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value(double value) {
+        separate();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            buffer.append("null");
+        } else if (value == (long) value) {
+            buffer.append((long) value);
+        } else {
+            buffer.append(value);
+        }
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Writes the bytes as a Base64 string, without line wrapping.
+     */
+    public JsonWriter valueBase64(byte[] value) {
+        separate();
+        if (value == null) {
+            buffer.append("null");
+            needsComma = true;
+            return this;
+        }
+
+        buffer.append('"');
+        int i = 0;
+        for (; i + 2 < value.length; i += 3) {
+            int bits = (value[i] & 0xff) << 16 | (value[i + 1] & 0xff) << 8 | (value[i + 2] & 0xff);
+            buffer.append(BASE64[bits >>> 18])
+                    .append(BASE64[(bits >>> 12) & 0x3f])
+                    .append(BASE64[(bits >>> 6) & 0x3f])
+                    .append(BASE64[bits & 0x3f]);
+        }
+
+        int remaining = value.length - i;
+        if (remaining == 1) {
+            int bits = (value[i] & 0xff) << 16;
+            buffer.append(BASE64[bits >>> 18])
+                    .append(BASE64[(bits >>> 12) & 0x3f])
+                    .append("==");
+        } else if (remaining == 2) {
+            int bits = (value[i] & 0xff) << 16 | (value[i + 1] & 0xff) << 8;
+            buffer.append(BASE64[bits >>> 18])
+                    .append(BASE64[(bits >>> 12) & 0x3f])
+                    .append(BASE64[(bits >>> 6) & 0x3f])
+                    .append('=');
+        }
+        buffer.append('"');
+
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Writes an already serialized JSON value as is.
+     */
+    public JsonWriter rawValue(String json) {
+        separate();
+        buffer.append(json);
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Writes already serialized fields ("a":1,"b":2) into the current object as is.
+     */
+    public JsonWriter rawFields(String fields) {
+        separate();
+        buffer.append(fields);
+        needsComma = true;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return buffer.toString();
+    }
+
+    private void separate() {
+        if (needsComma) {
+            buffer.append(',');
+            needsComma = false;
+        }
+    }
+
+    private void quote(String value) {
+        buffer.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    buffer.append('\\').append(c);
+                    break;
+                case '\b':
+                    buffer.append("\\b");
+                    break;
+                case '\t':
+                    buffer.append("\\t");
+                    break;
+                case '\n':
+                    buffer.append("\\n");
+                    break;
+                case '\f':
+                    buffer.append("\\f");
+                    break;
+                case '\r':
+                    buffer.append("\\r");
+                    break;
+                default:
+                    // control characters and the line separators JS does not accept in strings
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        buffer.append("\\u")
+                                .append(HEX[(c >> 12) & 0xf])
+                                .append(HEX[(c >> 8) & 0xf])
+                                .append(HEX[(c >> 4) & 0xf])
+                                .append(HEX[c & 0xf]);
+                    } else {
+                        buffer.append(c);
+                    }
+            }
+        }
+        buffer.append('"');
+    }
+}
@@ -0,0 +1,125 @@
+package com.ksachdeva.opensource.ble.central.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded ring buffer of notification values that are flushed to JS once per window.
+ *
+ * The notifying thread is shared by every subscriber of the characteristic, so offer never
+ * waits. What happens when a value arrives while the buffer is full depends on the overflow
+ * policy: DROP_OLDEST overwrites the oldest buffered value, DROP_NEWEST discards the incoming
+ * one and BLOCK hands it off to a backlog that is delivered by the following flushes, a batch
+ * never holds more than the capacity. The backlog is bounded too, it holds up to
+ * BACKLOG_BUFFERS times the capacity and BLOCK drops the incoming values once it is full.
+ * Dropped values are counted and reported with every batch.
+ */
+public class NotificationBuffer {
+
+    static final int BACKLOG_BUFFERS = 4;
+
+    public enum OverflowPolicy {
+        BLOCK,
+        DROP_OLDEST,
+        DROP_NEWEST;
+
+        public static OverflowPolicy fromJS(String value) {
+            if ("block".equals(value)) return BLOCK;
+            if ("dropNewest".equals(value)) return DROP_NEWEST;
+            return DROP_OLDEST;
+        }
+    }
+
+    public static class Batch {
+        public final List<byte[]> values;
+        public final long dropped;
+        public final long totalDropped;
+
+        Batch(List<byte[]> values, long dropped, long totalDropped) {
+            this.values = values;
+            this.dropped = dropped;
+            this.totalDropped = totalDropped;
+        }
+
+        public boolean isEmpty() {
+            return values.isEmpty() && dropped == 0;
+        }
+    }
+
+    private final byte[][] ring;
+    private final OverflowPolicy policy;
+    private final ArrayDeque<byte[]> backlog;
+    private final int backlogCapacity;
+
+    private int head;
+    private int size;
+    private long dropped;
+    private long totalDropped;
+
+    public NotificationBuffer(int capacity, OverflowPolicy policy) {
+        this.ring = new byte[capacity][];
+        this.policy = policy;
+        this.backlogCapacity = policy == OverflowPolicy.BLOCK ? capacity * BACKLOG_BUFFERS : 0;
+        this.backlog = new ArrayDeque<byte[]>(policy == OverflowPolicy.BLOCK ? capacity : 1);
+    }
+
+    public synchronized void offer(byte[] value) {
+        if (size == ring.length) {
+            switch (policy) {
+                case DROP_NEWEST:
+                    onDropped();
+                    return;
+                case DROP_OLDEST:
+                    ring[head] = null;
+                    head = (head + 1) % ring.length;
+                    size--;
+                    onDropped();
+                    break;
+                default:
+                    if (backlog.size() < backlogCapacity) {
+                        backlog.add(value);
+                    } else {
+                        onDropped();
+                    }
+                    return;
+            }
+        }
+
+        ring[(head + size) % ring.length] = value;
+        size++;
+    }
+
+    public synchronized Batch drain() {
+        List<byte[]> values = new ArrayList<byte[]>(size);
+        while (size > 0) {
+            values.add(ring[head]);
+            ring[head] = null;
+            head = (head + 1) % ring.length;
+            size--;
+        }
+
+        // the backlog moves up, oldest first, and goes out with the next flush
+        head = 0;
+        while (size < ring.length && !backlog.isEmpty()) {
+            ring[size++] = backlog.poll();
+        }
+
+        Batch batch = new Batch(values, dropped, totalDropped);
+        dropped = 0;
+
+        return batch;
+    }
+
+    /**
+     * @return true when values are still buffered
+     */
+    public synchronized boolean hasRemaining() {
+        return size > 0;
+    }
+
+    private void onDropped() {
+        dropped++;
+        totalDropped++;
+    }
+}
@@ -0,0 +1,112 @@
+package com.ksachdeva.opensource.ble.central.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Per-device table, keyed by MAC address, used to drop repeated advertisements
+ * while scanning.
+ *
+ * The RSSI of every device is smoothed with an exponential moving average. A scan
+ * result is only let through when the device is new, when its smoothed RSSI moved by
+ * more than the threshold since it was last emitted or when the minimum interval elapsed.
+ *
+ * The table is bounded: the least recently seen devices are evicted once the capacity is
+ * reached, and devices not seen for longer than the maximum age (never less than the minimum
+ * interval, so an evicted device would have been emitted again anyway) are dropped.
+ */
+public class ScanDeduplicator {
+
+    private static class Entry {
+        SmoothedRssi smoothedRssi;
+        double emittedRssi;
+        long lastSeen;
+        long lastEmitted;
+    }
+
+    static final int DEFAULT_CAPACITY = 256;
+    static final long DEFAULT_MAX_AGE_MS = 10000;
+
+    // access ordered, the least recently seen devices come first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    private final double smoothing;
+    private final double rssiThreshold;
+    private final long minIntervalMs;
+    private final int capacity;
+    private final long maxAgeMs;
+
+    public ScanDeduplicator(double smoothing, double rssiThreshold, long minIntervalMs) {
+        this(smoothing, rssiThreshold, minIntervalMs, DEFAULT_CAPACITY, DEFAULT_MAX_AGE_MS);
+    }
+
+    public ScanDeduplicator(double smoothing, double rssiThreshold, long minIntervalMs, int capacity, long maxAgeMs) {
+        this.smoothing = smoothing;
+        this.rssiThreshold = rssiThreshold;
+        this.minIntervalMs = minIntervalMs;
+        this.capacity = Math.max(1, capacity);
+        this.maxAgeMs = Math.max(minIntervalMs, maxAgeMs);
+    }
+
+    public synchronized boolean accept(String macAddress, int rssi, long now) {
+        evict(now);
+
+        Entry entry = entries.get(macAddress);
+
+        if (entry == null) {
+            entry = new Entry();
+            entry.smoothedRssi = new SmoothedRssi(rssi);
+            entry.emittedRssi = rssi;
+            entry.lastSeen = now;
+            entry.lastEmitted = now;
+            entries.put(macAddress, entry);
+            trim();
+            return true;
+        }
+
+        entry.smoothedRssi.update(rssi, smoothing);
+        entry.lastSeen = now;
+
+        if (Math.abs(entry.smoothedRssi.get() - entry.emittedRssi) > rssiThreshold ||
+                now - entry.lastEmitted >= minIntervalMs) {
+            entry.emittedRssi = entry.smoothedRssi.get();
+            entry.lastEmitted = now;
+            return true;
+        }
+
+        return false;
+    }
+
+    public synchronized int getSmoothedRssi(String macAddress) {
+        Entry entry = entries.get(macAddress);
+        return entry != null ? entry.smoothedRssi.round() : 0;
+    }
+
+    public synchronized long getLastSeen(String macAddress) {
+        Entry entry = entries.get(macAddress);
+        return entry != null ? entry.lastSeen : 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private void evict(long now) {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (eldest.hasNext() && now - eldest.next().lastSeen > maxAgeMs) {
+            eldest.remove();
+        }
+    }
+
+    private void trim() {
+        Iterator<String> eldest = entries.keySet().iterator();
+        while (entries.size() > capacity && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+}
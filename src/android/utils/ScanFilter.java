@@ -0,0 +1,142 @@
+package com.ksachdeva.opensource.ble.central.utils;
+
+import android.util.Base64;
+
+import org.json.JSONObject;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Native filter applied to the scan results before they are converted, so rejected
+ * advertisements never reach the bridge.
+ *
+ * The checks run from the cheapest to the most expensive one: RSSI floor, name prefix,
+ * name regex and finally manufacturer company ID and data, looked up in the raw
+ * advertising record without copying it.
+ */
+public class ScanFilter {
+
+    static final int NO_MANUFACTURER_ID = -1;
+
+    private interface Metadata {
+        String MIN_RSSI = "minRssi";
+        String NAME_PREFIX = "namePrefix";
+        String NAME_REGEX = "nameRegex";
+        String MANUFACTURER_ID = "manufacturerId";
+        String MANUFACTURER_DATA = "manufacturerData";
+        String MANUFACTURER_DATA_MASK = "manufacturerDataMask";
+    }
+
+    private int minRssi = Integer.MIN_VALUE;
+    private String namePrefix;
+    private Pattern nameRegex;
+    private int manufacturerId = NO_MANUFACTURER_ID;
+    private byte[] manufacturerData;
+    private byte[] manufacturerDataMask;
+
+    /**
+     * @return the filter, or null when the options are invalid (bad regex or Base64 data)
+     */
+    public static ScanFilter fromJS(JSONObject js) {
+        ScanFilter filter = new ScanFilter();
+        if (js == null) {
+            return filter;
+        }
+
+        if (js.has(Metadata.MIN_RSSI)) {
+            filter.minRssi = js.optInt(Metadata.MIN_RSSI, Integer.MIN_VALUE);
+        }
+
+        String namePrefix = js.optString(Metadata.NAME_PREFIX, "");
+        if (namePrefix.length() > 0) {
+            filter.namePrefix = namePrefix;
+        }
+
+        try {
+            String nameRegex = js.optString(Metadata.NAME_REGEX, "");
+            if (nameRegex.length() > 0) {
+                filter.nameRegex = Pattern.compile(nameRegex);
+            }
+
+            filter.manufacturerId = js.optInt(Metadata.MANUFACTURER_ID, NO_MANUFACTURER_ID);
+
+            String manufacturerData = js.optString(Metadata.MANUFACTURER_DATA, "");
+            if (manufacturerData.length() > 0) {
+                filter.manufacturerData = Base64.decode(manufacturerData, Base64.DEFAULT);
+            }
+
+            String manufacturerDataMask = js.optString(Metadata.MANUFACTURER_DATA_MASK, "");
+            if (manufacturerDataMask.length() > 0) {
+                filter.manufacturerDataMask = Base64.decode(manufacturerDataMask, Base64.DEFAULT);
+            }
+        } catch (PatternSyntaxException ex) {
+            return null;
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+
+        return filter;
+    }
+
+    public boolean isEmpty() {
+        return minRssi == Integer.MIN_VALUE &&
+                namePrefix == null &&
+                nameRegex == null &&
+                manufacturerId == NO_MANUFACTURER_ID &&
+                manufacturerData == null;
+    }
+
+    public boolean accept(String name, int rssi, byte[] scanRecord) {
+        if (rssi < minRssi) {
+            return false;
+        }
+
+        if (namePrefix != null && (name == null || !name.startsWith(namePrefix))) {
+            return false;
+        }
+
+        if (nameRegex != null && (name == null || !nameRegex.matcher(name).find())) {
+            return false;
+        }
+
+        if (manufacturerId != NO_MANUFACTURER_ID || manufacturerData != null) {
+            return acceptManufacturerData(scanRecord);
+        }
+
+        return true;
+    }
+
+    private boolean acceptManufacturerData(byte[] scanRecord) {
+        return Advertisement.walk(scanRecord, new Advertisement.StructureVisitor() {
+            @Override
+            public boolean visit(byte[] record, int type, int from, int length) {
+                if (type != Advertisement.AdType.MANUFACTURER_DATA || length < 2) {
+                    return false;
+                }
+                // the data starts with the little endian company ID
+                int companyId = (record[from] & 0xff) | (record[from + 1] & 0xff) << 8;
+                return (manufacturerId == NO_MANUFACTURER_ID || companyId == manufacturerId) &&
+                        matchesManufacturerData(record, from + 2, length - 2);
+            }
+        });
+    }
+
+    private boolean matchesManufacturerData(byte[] scanRecord, int from, int length) {
+        if (manufacturerData == null) {
+            return true;
+        }
+        if (length < manufacturerData.length) {
+            return false;
+        }
+
+        for (int i = 0; i < manufacturerData.length; i++) {
+            int mask = manufacturerDataMask != null && i < manufacturerDataMask.length ?
+                    manufacturerDataMask[i] : 0xff;
+            if ((scanRecord[from + i] & mask) != (manufacturerData[i] & mask)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,116 @@
+package com.ksachdeva.opensource.ble.central.utils;
+
+import org.json.JSONObject;
+
+public class ScanOptions {
+
+    static final long DEFAULT_BATCH_WINDOW_MS = 100;
+    static final int DEFAULT_BATCH_SIZE = 50;
+
+    static final double DEFAULT_RSSI_THRESHOLD = 5;
+    static final long DEFAULT_MIN_INTERVAL_MS = 1000;
+
+    static final int DEFAULT_DISCOVERED_DEVICES_CAPACITY = 256;
+
+    private interface Metadata {
+        String BATCH_WINDOW_MS = "batchWindowMs";
+        String BATCH_SIZE = "batchSize";
+        String DEDUPLICATE = "deduplicate";
+        String RSSI_SMOOTHING = "rssiSmoothing";
+        String RSSI_THRESHOLD = "rssiThreshold";
+        String MIN_INTERVAL_MS = "minIntervalMs";
+        String ADVERTISEMENT = "advertisement";
+        String DISCOVERED_DEVICES_CAPACITY = "discoveredDevicesCapacity";
+    }
+
+    private long batchWindowMs;
+    private int batchSize;
+
+    private boolean deduplicate;
+    private double rssiSmoothing = SmoothedRssi.DEFAULT_SMOOTHING;
+    private double rssiThreshold = DEFAULT_RSSI_THRESHOLD;
+    private long minIntervalMs = DEFAULT_MIN_INTERVAL_MS;
+
+    private boolean advertisement;
+
+    private int discoveredDevicesCapacity = DEFAULT_DISCOVERED_DEVICES_CAPACITY;
+
+    public static ScanOptions fromJS(JSONObject js) {
+        ScanOptions options = new ScanOptions();
+        if (js == null) {
+            return options;
+        }
+
+        long batchWindowMs = js.optLong(Metadata.BATCH_WINDOW_MS, 0);
+        int batchSize = js.optInt(Metadata.BATCH_SIZE, 0);
+
+        // batching is enabled as soon as one of the two limits is given,
+        // the other one falls back to its default
+        if (batchWindowMs > 0 || batchSize > 0) {
+            options.batchWindowMs = batchWindowMs > 0 ? batchWindowMs : DEFAULT_BATCH_WINDOW_MS;
+            options.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+        }
+
+        options.deduplicate = js.optBoolean(Metadata.DEDUPLICATE, false);
+
+        double rssiSmoothing = js.optDouble(Metadata.RSSI_SMOOTHING, SmoothedRssi.DEFAULT_SMOOTHING);
+        if (rssiSmoothing > 0 && rssiSmoothing <= 1) {
+            options.rssiSmoothing = rssiSmoothing;
+        }
+
+        double rssiThreshold = js.optDouble(Metadata.RSSI_THRESHOLD, DEFAULT_RSSI_THRESHOLD);
+        if (rssiThreshold >= 0) {
+            options.rssiThreshold = rssiThreshold;
+        }
+
+        long minIntervalMs = js.optLong(Metadata.MIN_INTERVAL_MS, DEFAULT_MIN_INTERVAL_MS);
+        if (minIntervalMs >= 0) {
+            options.minIntervalMs = minIntervalMs;
+        }
+
+        options.advertisement = js.optBoolean(Metadata.ADVERTISEMENT, false);
+
+        int discoveredDevicesCapacity = js.optInt(Metadata.DISCOVERED_DEVICES_CAPACITY, DEFAULT_DISCOVERED_DEVICES_CAPACITY);
+        if (discoveredDevicesCapacity >= 0) {
+            options.discoveredDevicesCapacity = discoveredDevicesCapacity;
+        }
+
+        return options;
+    }
+
+    public boolean isBatched() {
+        return batchWindowMs > 0;
+    }
+
+    public long getBatchWindowMs() {
+        return batchWindowMs;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public boolean isDeduplicated() {
+        return deduplicate;
+    }
+
+    public double getRssiSmoothing() {
+        return rssiSmoothing;
+    }
+
+    public double getRssiThreshold() {
+        return rssiThreshold;
+    }
+
+    public long getMinIntervalMs() {
+        return minIntervalMs;
+    }
+
+    public boolean isAdvertisementParsed() {
+        return advertisement;
+    }
+
+    public int getDiscoveredDevicesCapacity() {
+        return discoveredDevicesCapacity;
+    }
+}
@@ -0,0 +1,31 @@
+package com.ksachdeva.opensource.ble.central.utils;
+
+/**
+ * Exponential moving average of the RSSI of a device. The scan deduplicator and the registry
+ * of the discovered devices both smooth through it, with the smoothing factor of the scan.
+ */
+class SmoothedRssi {
+
+    static final double DEFAULT_SMOOTHING = 0.3;
+
+    private double value;
+
+    SmoothedRssi(int rssi) {
+        this.value = rssi;
+    }
+
+    /**
+     * @param smoothing weight of the new reading, between 0 (exclusive) and 1
+     */
+    void update(int rssi, double smoothing) {
+        value += smoothing * (rssi - value);
+    }
+
+    double get() {
+        return value;
+    }
+
+    int round() {
+        return (int) Math.round(value);
+    }
+}
@@ -0,0 +1,132 @@
+package com.ksachdeva.opensource.ble.central.utils;
+
+import org.json.JSONObject;
+
+import com.ksachdeva.opensource.ble.central.session.OperationQueue;
+
+public class TransactionOptions {
+
+    static final int DEFAULT_BUFFER_SIZE = 256;
+
+    // the plugin wide default applies
+    static final long DEFAULT_TIMEOUT = -1;
+
+    private interface Metadata {
+        String BINARY = "binary";
+        String BATCH_WINDOW_MS = "batchWindowMs";
+        String BUFFER_SIZE = "bufferSize";
+        String OVERFLOW = "overflow";
+        String CONFLATE_MS = "conflateMs";
+        String CHUNK_SIZE = "chunkSize";
+        String PRIORITY = "priority";
+        String OMIT_METADATA = "omitMetadata";
+        String TIMEOUT_MS = "timeoutMs";
+    }
+
+    private boolean binary;
+    private long batchWindowMs;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private NotificationBuffer.OverflowPolicy overflowPolicy = NotificationBuffer.OverflowPolicy.DROP_OLDEST;
+    private long conflateMs;
+    private int chunkSize;
+    private OperationQueue.Priority priority = OperationQueue.Priority.NORMAL;
+    private boolean omitMetadata;
+    private long timeoutMs = DEFAULT_TIMEOUT;
+
+    public static TransactionOptions fromJS(JSONObject js) {
+        TransactionOptions options = new TransactionOptions();
+        if (js == null) {
+            return options;
+        }
+
+        options.binary = js.optBoolean(Metadata.BINARY, false);
+        options.batchWindowMs = Math.max(0, js.optLong(Metadata.BATCH_WINDOW_MS, 0));
+
+        int bufferSize = js.optInt(Metadata.BUFFER_SIZE, DEFAULT_BUFFER_SIZE);
+        if (bufferSize > 0) {
+            options.bufferSize = bufferSize;
+        }
+
+        options.overflowPolicy = NotificationBuffer.OverflowPolicy.fromJS(js.optString(Metadata.OVERFLOW, null));
+        options.conflateMs = Math.max(0, js.optLong(Metadata.CONFLATE_MS, 0));
+        options.chunkSize = Math.max(0, js.optInt(Metadata.CHUNK_SIZE, 0));
+        options.priority = OperationQueue.Priority.fromJS(js.optString(Metadata.PRIORITY, null));
+        options.omitMetadata = js.optBoolean(Metadata.OMIT_METADATA, false);
+
+        if (js.has(Metadata.TIMEOUT_MS) && !js.isNull(Metadata.TIMEOUT_MS)) {
+            options.timeoutMs = Math.max(0, js.optLong(Metadata.TIMEOUT_MS, 0));
+        }
+
+        return options;
+    }
+
+    /**
+     * When set, characteristic values are delivered as an ArrayBuffer next to the
+     * characteristic metadata instead of a Base64 string inside of it. cordova-android still
+     * Base64 encodes the bytes of the ArrayBuffer on the bridge, only the JSON wrapping of
+     * the value is saved.
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public boolean isBatched() {
+        return batchWindowMs > 0;
+    }
+
+    public long getBatchWindowMs() {
+        return batchWindowMs;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public NotificationBuffer.OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * When set, only the most recent notification value is kept and it is
+     * delivered at most once per conflation interval.
+     */
+    public boolean isConflated() {
+        return conflateMs > 0;
+    }
+
+    public long getConflateMs() {
+        return conflateMs;
+    }
+
+    /**
+     * Size of the chunks a long write is split into, 0 when it should follow the MTU.
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Priority of the GATT operations of the transaction in the queue of the device.
+     */
+    public OperationQueue.Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * When set, notifications only carry the static characteristic metadata (uuid, flags,
+     * device and service) with the first value, the following ones have isNotifying and
+     * the value alone.
+     */
+    public boolean isMetadataOmitted() {
+        return omitMetadata;
+    }
+
+    /**
+     * Time the transaction may stay silent before it fails with a timeout error, 0 for none.
+     *
+     * @param defaultTimeoutMs used when the transaction does not give one
+     */
+    public long getTimeoutMs(long defaultTimeoutMs) {
+        return timeoutMs != DEFAULT_TIMEOUT ? timeoutMs : defaultTimeoutMs;
+    }
+}
@@ -3,18 +3,32 @@ package com.ksachdeva.opensource.ble.central.utils;
 import org.json.JSONArray;
 
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Conversions between the UUID strings of the JS API and {@link UUID}.
+ *
+ * An application only deals with a handful of services and characteristics, so both
+ * directions go through bounded intern caches and the per-packet paths do not allocate.
+ * 16 and 32 bit UUIDs are expanded against the Bluetooth base UUID arithmetically, without
+ * building the 128 bit string.
+ */
 public class UUIDConverter {
 
-    private static String baseUUIDPrefix = "0000";
-    private static String baseUUIDSuffix = "-0000-1000-8000-00805F9B34FB";
+    static final int MAX_CACHED_UUIDS = 256;
+
+    // 00000000-0000-1000-8000-00805F9B34FB
+    private static final long BASE_UUID_MOST_SIG_BITS = 0x0000000000001000L;
+    private static final long BASE_UUID_LEAST_SIG_BITS = 0x800000805F9B34FBL;
+
+    private static final ConcurrentHashMap<String, UUID> uuids = new ConcurrentHashMap<String, UUID>();
+    private static final ConcurrentHashMap<UUID, String> strings = new ConcurrentHashMap<UUID, String>();
 
     public static UUID[] convert(JSONArray sUUIDs) {
         UUID[] UUIDs = new UUID[sUUIDs.length()];
         for (int i = 0; i < sUUIDs.length(); i++) {
-            try {
-                UUIDs[i] = UUID.fromString(sUUIDs.getString(i));
-            } catch (Throwable e) {
+            UUIDs[i] = convert(sUUIDs.optString(i, ""));
+            if (UUIDs[i] == null) {
                 return null;
             }
         }
@@ -22,34 +36,85 @@ public class UUIDConverter {
     }
 
     public static UUID convert(String sUUID) {
-        if (sUUID.length() == 4) {
-            sUUID = baseUUIDPrefix + sUUID + baseUUIDSuffix;
-        }
-        try {
-            return UUID.fromString(sUUID);
-        } catch (Throwable e) {
+        if (sUUID == null) {
             return null;
         }
+
+        UUID uuid = uuids.get(sUUID);
+        if (uuid != null) {
+            return uuid;
+        }
+
+        uuid = parse(sUUID);
+        if (uuid != null) {
+            cache(uuids, sUUID, uuid);
+        }
+        return uuid;
     }
 
     public static UUID[] convert(String... sUUIDs) {
         UUID[] UUIDs = new UUID[sUUIDs.length];
         for (int i = 0; i < sUUIDs.length; i++) {
-            try {
-                if (sUUIDs[i].length() == 4) {
-                    sUUIDs[i] = baseUUIDPrefix + sUUIDs[i] + baseUUIDSuffix;
-                }
-                UUIDs[i] = UUID.fromString(sUUIDs[i]);
-            } catch (Throwable e) {
+            UUIDs[i] = convert(sUUIDs[i]);
+            if (UUIDs[i] == null) {
                 return null;
             }
         }
         return UUIDs;
     }
 
+    public static String fromUUID(UUID uuid) {
+        String sUUID = strings.get(uuid);
+        if (sUUID == null) {
+            // UUID.toString() is already lower case
+            sUUID = uuid.toString();
+            cache(strings, uuid, sUUID);
+        }
+        return sUUID;
+    }
 
+    /**
+     * Expands a 16 or 32 bit UUID against the Bluetooth base UUID.
+     */
+    public static UUID fromShortUUID(long shortUUID) {
+        return new UUID(BASE_UUID_MOST_SIG_BITS | (shortUUID << 32), BASE_UUID_LEAST_SIG_BITS);
+    }
 
-    public static String fromUUID(UUID uuid) {
-        return uuid.toString().toLowerCase();
+    private static UUID parse(String sUUID) {
+        int length = sUUID.length();
+        if (length == 4 || length == 8) {
+            long shortUUID = parseHex(sUUID);
+            if (shortUUID < 0) {
+                return null;
+            }
+            return fromShortUUID(shortUUID);
+        }
+
+        try {
+            return UUID.fromString(sUUID);
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    // -1 when the string is not made of hex digits only
+    private static long parseHex(String value) {
+        long result = 0;
+        for (int i = 0; i < value.length(); i++) {
+            int digit = Character.digit(value.charAt(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            result = (result << 4) | digit;
+        }
+        return result;
+    }
+
+    // the caches are simply dropped once full, they are refilled by the UUIDs in use
+    private static <K, V> void cache(ConcurrentHashMap<K, V> cache, K key, V value) {
+        if (cache.size() >= MAX_CACHED_UUIDS) {
+            cache.clear();
+        }
+        cache.put(key, value);
     }
 }
@@ -0,0 +1,40 @@
+package com.ksachdeva.opensource.ble.central.benchmarks;
+
+import com.ksachdeva.opensource.ble.central.backend.BleConnection;
+import com.ksachdeva.opensource.ble.central.backend.BleDevice;
+
+import rx.Observable;
+
+/**
+ * Plain JVM stand-in for a scanned device, only its identity is used by the converters.
+ */
+class BenchmarkDevice implements BleDevice {
+
+    private final String macAddress;
+    private final String name;
+
+    BenchmarkDevice(String macAddress, String name) {
+        this.macAddress = macAddress;
+        this.name = name;
+    }
+
+    @Override
+    public String getMacAddress() {
+        return macAddress;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return false;
+    }
+
+    @Override
+    public Observable<BleConnection> establishConnection(boolean autoConnect) {
+        return Observable.error(new UnsupportedOperationException("Benchmark device"));
+    }
+}
@@ -0,0 +1,66 @@
+package com.ksachdeva.opensource.ble.central.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH suites of the per-packet hot path: the converters, the UUID conversions, the error
+ * conversion and the serialization of a notification.
+ *
+ * Every suite runs with the GC profiler, gc.alloc.rate.norm (bytes allocated per operation)
+ * is the figure that catches allocation regressions next to the throughput. Like the load
+ * test, the suites run on a JVM with the plugin sources, Cordova, RxJava 1, RxAndroidBle and
+ * a functional android.jar (e.g. Robolectric's android-all) on the classpath, plus jmh-core
+ * and jmh-generator-annprocess to compile them:
+ *
+ *   javac -cp $CLASSPATH:jmh-core.jar:jmh-generator-annprocess.jar -d out \
+ *       $(find src/android tools/benchmarks -name '*.java')
+ *   java -cp out:$CLASSPATH:jmh-core.jar \
+ *       com.ksachdeva.opensource.ble.central.benchmarks.Benchmarks --out results.json
+ *
+ * Other options: --include to select the suites (a regex, defaults to the whole package),
+ * --forks, --warmupIterations and --iterations. org.openjdk.jmh.Main works as well for the
+ * usual JMH command line.
+ */
+public class Benchmarks {
+
+    public static void main(String[] args) throws Exception {
+        String include = Benchmarks.class.getPackage().getName() + ".*Benchmark";
+        String out = null;
+        int forks = 1;
+        int warmupIterations = 5;
+        int iterations = 5;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if ("--include".equals(args[i])) {
+                include = args[i + 1];
+            } else if ("--out".equals(args[i])) {
+                out = args[i + 1];
+            } else if ("--forks".equals(args[i])) {
+                forks = Integer.parseInt(args[i + 1]);
+            } else if ("--warmupIterations".equals(args[i])) {
+                warmupIterations = Integer.parseInt(args[i + 1]);
+            } else if ("--iterations".equals(args[i])) {
+                iterations = Integer.parseInt(args[i + 1]);
+            } else {
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            }
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .forks(forks)
+                .warmupIterations(warmupIterations)
+                .measurementIterations(iterations);
+
+        if (out != null) {
+            options.resultFormat(ResultFormatType.JSON).result(out);
+        }
+
+        new Runner(options.build()).run();
+    }
+}
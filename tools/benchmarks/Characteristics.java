@@ -0,0 +1,40 @@
+package com.ksachdeva.opensource.ble.central.benchmarks;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+
+import java.util.UUID;
+
+/**
+ * Characteristics as the Android stack hands them to the plugin, notifying through their CCCD.
+ */
+class Characteristics {
+
+    static final String DEVICE_ID = "AA:BB:CC:DD:EE:01";
+    static final String SERVICE_UUID = "0000fff0-0000-1000-8000-00805f9b34fb";
+
+    private static final UUID CHAR_UUID = UUID.fromString("0000fff1-0000-1000-8000-00805f9b34fb");
+    private static final UUID CLIENT_CHARACTERISTIC_CONFIG_UUID = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+
+    static BluetoothGattCharacteristic notifying(byte[] value) {
+        BluetoothGattCharacteristic characteristic = new BluetoothGattCharacteristic(CHAR_UUID,
+                BluetoothGattCharacteristic.PROPERTY_READ | BluetoothGattCharacteristic.PROPERTY_NOTIFY,
+                BluetoothGattCharacteristic.PERMISSION_READ);
+
+        BluetoothGattDescriptor cccd = new BluetoothGattDescriptor(CLIENT_CHARACTERISTIC_CONFIG_UUID,
+                BluetoothGattDescriptor.PERMISSION_READ | BluetoothGattDescriptor.PERMISSION_WRITE);
+        cccd.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+        characteristic.addDescriptor(cccd);
+
+        characteristic.setValue(value);
+        return characteristic;
+    }
+
+    static byte[] payload(int size) {
+        byte[] payload = new byte[size];
+        for (int i = 0; i < size; i++) {
+            payload[i] = (byte) (i * 31);
+        }
+        return payload;
+    }
+}
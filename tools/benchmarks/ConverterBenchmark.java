@@ -0,0 +1,73 @@
+package com.ksachdeva.opensource.ble.central.benchmarks;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import com.ksachdeva.opensource.ble.central.backend.BleScanResult;
+import com.ksachdeva.opensource.ble.central.converters.BluetoothGattCharacteristicConverter;
+import com.ksachdeva.opensource.ble.central.converters.RxBleScanResultConverter;
+import com.ksachdeva.opensource.ble.central.utils.JsonWriter;
+
+/**
+ * Scan result and characteristic conversions, the JSONObject versions against the streaming
+ * ones the plugin sends with.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConverterBenchmark {
+
+    @Param({"20", "244"})
+    public int payloadSize;
+
+    private final RxBleScanResultConverter scanResultConverter = new RxBleScanResultConverter();
+    private final BluetoothGattCharacteristicConverter characteristicConverter = new BluetoothGattCharacteristicConverter();
+
+    private BleScanResult scanResult;
+    private BluetoothGattCharacteristic characteristic;
+
+    @Setup
+    public void setup() {
+        scanResult = new BleScanResult(new BenchmarkDevice(Characteristics.DEVICE_ID, "Benchmark"), -60,
+                Characteristics.payload(31));
+        characteristic = Characteristics.notifying(Characteristics.payload(payloadSize));
+    }
+
+    @Benchmark
+    public String scanResultToJSObject() {
+        JSONObject js = scanResultConverter.toJSObject(scanResult);
+        return js.toString();
+    }
+
+    @Benchmark
+    public String scanResultWriteTo() {
+        JsonWriter writer = JsonWriter.obtain().beginObject();
+        scanResultConverter.writeTo(writer, scanResult);
+        return writer.endObject().toString();
+    }
+
+    @Benchmark
+    public String characteristicToJSObject() {
+        JSONObject js = characteristicConverter.toJSObject(characteristic);
+        return js.toString();
+    }
+
+    @Benchmark
+    public String characteristicWriteMetadataTo() {
+        JsonWriter writer = JsonWriter.obtain().beginObject();
+        characteristicConverter.writeMetadataTo(writer, characteristic, Characteristics.DEVICE_ID,
+                Characteristics.SERVICE_UUID);
+        return writer.endObject().toString();
+    }
+}
@@ -0,0 +1,53 @@
+package com.ksachdeva.opensource.ble.central.benchmarks;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.ksachdeva.opensource.ble.central.backend.SimulatedGattException;
+import com.ksachdeva.opensource.ble.central.errors.ErrorConverter;
+import com.polidea.rxandroidble.exceptions.BleScanException;
+
+/**
+ * ErrorConverter.toError down to the JS error object, for the first branch (timeout), a GATT
+ * failure further down the chain, a scan failure and the unknown fallback.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ErrorConverterBenchmark {
+
+    private final ErrorConverter errorConverter = new ErrorConverter();
+
+    private final Throwable timeout = new TimeoutException();
+    private final Throwable gatt = new SimulatedGattException("read", Characteristics.DEVICE_ID);
+    private final Throwable scan = new BleScanException(BleScanException.BLUETOOTH_DISABLED);
+    private final Throwable unknown = new IllegalStateException("Benchmark");
+
+    @Benchmark
+    public JSONObject timeout() {
+        return errorConverter.toError(timeout).toJS();
+    }
+
+    @Benchmark
+    public JSONObject gatt() {
+        return errorConverter.toError(gatt).toJS();
+    }
+
+    @Benchmark
+    public JSONObject scan() {
+        return errorConverter.toError(scan).toJS();
+    }
+
+    @Benchmark
+    public JSONObject unknown() {
+        return errorConverter.toError(unknown).toJS();
+    }
+}
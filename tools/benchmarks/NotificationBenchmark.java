@@ -0,0 +1,76 @@
+package com.ksachdeva.opensource.ble.central.benchmarks;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.util.Base64;
+
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import com.ksachdeva.opensource.ble.central.converters.BluetoothGattCharacteristicConverter;
+import com.ksachdeva.opensource.ble.central.utils.JsonPluginResult;
+import com.ksachdeva.opensource.ble.central.utils.JsonWriter;
+
+/**
+ * One notification, from the received value to the message the bridge sends to JS.
+ *
+ * jsonObject is the original path of sendNotification: the characteristic as a JSONObject,
+ * the value Base64 encoded by android.util.Base64, serialized by the PluginResult. streaming
+ * and streamingMetadataOmitted are the ones of sendNotification today, with the full
+ * metadata and with the isNotifying flag alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NotificationBenchmark {
+
+    @Param({"20", "244"})
+    public int payloadSize;
+
+    private final BluetoothGattCharacteristicConverter characteristicConverter = new BluetoothGattCharacteristicConverter();
+
+    private BluetoothGattCharacteristic characteristic;
+    private byte[] value;
+
+    @Setup
+    public void setup() {
+        value = Characteristics.payload(payloadSize);
+        characteristic = Characteristics.notifying(value);
+    }
+
+    @Benchmark
+    public String jsonObject() throws JSONException {
+        JSONObject jsObject = characteristicConverter.toMetadataJSObject(characteristic);
+        jsObject.put("deviceUUID", Characteristics.DEVICE_ID);
+        jsObject.put("serviceUUID", Characteristics.SERVICE_UUID);
+        jsObject.put("value", Base64.encodeToString(value, Base64.DEFAULT));
+        return new PluginResult(PluginResult.Status.OK, jsObject).getMessage();
+    }
+
+    @Benchmark
+    public String streaming() {
+        JsonWriter writer = JsonWriter.obtain().beginObject();
+        characteristicConverter.writeMetadataTo(writer, characteristic, Characteristics.DEVICE_ID,
+                Characteristics.SERVICE_UUID);
+        writer.name("value").valueBase64(value);
+        return new JsonPluginResult(PluginResult.Status.OK, writer.endObject().toString()).getMessage();
+    }
+
+    @Benchmark
+    public String streamingMetadataOmitted() {
+        JsonWriter writer = JsonWriter.obtain().beginObject();
+        characteristicConverter.writeNotifyingTo(writer, characteristic);
+        writer.name("value").valueBase64(value);
+        return new JsonPluginResult(PluginResult.Status.OK, writer.endObject().toString()).getMessage();
+    }
+}
@@ -0,0 +1,57 @@
+package com.ksachdeva.opensource.ble.central.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import com.ksachdeva.opensource.ble.central.utils.UUIDConverter;
+
+/**
+ * UUIDConverter in both directions. The interned conversions are what the per-packet paths
+ * see, the JDK ones are the baseline they replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UUIDConverterBenchmark {
+
+    private String longUUID = "0000FFF1-0000-1000-8000-00805F9B34FB";
+    private String shortUUID = "fff1";
+    private UUID uuid = UUID.fromString("0000fff1-0000-1000-8000-00805f9b34fb");
+
+    @Benchmark
+    public UUID convertLong() {
+        return UUIDConverter.convert(longUUID);
+    }
+
+    @Benchmark
+    public UUID convertShort() {
+        return UUIDConverter.convert(shortUUID);
+    }
+
+    @Benchmark
+    public UUID convertServiceAndCharacteristic() {
+        return UUIDConverter.convert(Characteristics.SERVICE_UUID, shortUUID)[1];
+    }
+
+    @Benchmark
+    public String fromUUID() {
+        return UUIDConverter.fromUUID(uuid);
+    }
+
+    @Benchmark
+    public UUID jdkFromString() {
+        return UUID.fromString(longUUID);
+    }
+
+    @Benchmark
+    public String jdkToString() {
+        return uuid.toString().toLowerCase();
+    }
+}
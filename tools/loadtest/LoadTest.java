@@ -0,0 +1,485 @@
+package com.ksachdeva.opensource.ble.central.loadtest;
+
+import android.util.Base64;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.FileWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ksachdeva.opensource.ble.central.CentralPlugin;
+import com.ksachdeva.opensource.ble.central.backend.SimulatedBackend;
+import com.ksachdeva.opensource.ble.central.backend.SimulatedPeripheral;
+
+/**
+ * Headless load test of the plugin against a SimulatedBackend.
+ *
+ * N simulated peripherals each notify at X Hz with Y byte payloads while a mixed workload
+ * reads and writes another characteristic of every device. CentralPlugin.execute is driven
+ * directly with stub callback contexts, no WebView is involved. The report is a JSON
+ * object: sustained notification throughput, p50 / p99 / p999 delivery latency (emission
+ * by the peripheral to the callback), read / write latency, allocation rate, dropped
+ * notifications (sequence gaps) and the plugin's own getMetrics snapshot.
+ *
+ * Runs on a JVM with the plugin sources, Cordova, RxJava 1, RxAndroidBle and a functional
+ * android.jar (e.g. Robolectric's android-all) on the classpath:
+ *
+ *   java com.ksachdeva.opensource.ble.central.loadtest.LoadTest \
+ *       --devices 20 --hz 50 --payload 20 --rwHz 5 --durationSec 60 --out report.json
+ *
+ * Other options: --warmupSec, --latencyMs, --jitterMs, --failureRate and --label, copied
+ * into the report to tell the releases apart.
+ */
+public class LoadTest {
+
+    private static final String SERVICE_UUID = "0000fff0-0000-1000-8000-00805f9b34fb";
+    private static final String NOTIFY_UUID = "0000fff1-0000-1000-8000-00805f9b34fb";
+    private static final String READ_WRITE_UUID = "0000fff2-0000-1000-8000-00805f9b34fb";
+
+    // nanoTime and sequence number written by the simulated peripheral
+    private static final int MIN_PAYLOAD_SIZE = 12;
+
+    private static final long SETUP_TIMEOUT_SEC = 30;
+
+    private final Map<String, String> options;
+
+    private final int devices;
+    private final double hz;
+    private final int payloadSize;
+    private final double readWriteHz;
+    private final long warmupSec;
+    private final long durationSec;
+
+    private final Samples notificationLatency = new Samples();
+    private final Samples readLatency = new Samples();
+    private final Samples writeLatency = new Samples();
+    private final AtomicLong notifications = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong readWriteErrors = new AtomicLong();
+    private final AtomicLong transactionIds = new AtomicLong();
+
+    private volatile boolean measuring;
+    private volatile long measureStartNanos;
+
+    private CentralPlugin plugin;
+
+    LoadTest(Map<String, String> options) {
+        this.options = options;
+        this.devices = Integer.parseInt(option("devices", "10"));
+        this.hz = Double.parseDouble(option("hz", "20"));
+        this.payloadSize = Math.max(MIN_PAYLOAD_SIZE, Integer.parseInt(option("payload", "20")));
+        this.readWriteHz = Double.parseDouble(option("rwHz", "2"));
+        this.warmupSec = Long.parseLong(option("warmupSec", "5"));
+        this.durationSec = Long.parseLong(option("durationSec", "30"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<String, String>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+
+        JSONObject report = new LoadTest(options).run();
+
+        String out = options.get("out");
+        if (out == null) {
+            System.out.println(report.toString(2));
+        } else {
+            Writer writer = new FileWriter(out);
+            try {
+                writer.write(report.toString(2));
+            } finally {
+                writer.close();
+            }
+        }
+        System.exit(0);
+    }
+
+    JSONObject run() throws Exception {
+        SimulatedBackend backend = SimulatedBackend.fromJS(createPeripherals());
+        if (backend == null) {
+            throw new IllegalStateException("Invalid simulated peripherals");
+        }
+        plugin = new CentralPlugin(backend);
+
+        List<String> deviceIds = new ArrayList<String>();
+        for (int i = 0; i < devices; i++) {
+            deviceIds.add(deviceId(i));
+        }
+
+        connect(deviceIds);
+        for (String deviceId : deviceIds) {
+            monitor(deviceId);
+        }
+
+        ScheduledExecutorService workload = Executors.newScheduledThreadPool(2);
+        if (readWriteHz > 0) {
+            long periodMicros = (long) (1000000 / readWriteHz);
+            for (final String deviceId : deviceIds) {
+                workload.scheduleAtFixedRate(new Runnable() {
+                    private boolean write;
+
+                    @Override
+                    public void run() {
+                        // alternates reads and writes
+                        if (write) {
+                            write(deviceId);
+                        } else {
+                            read(deviceId);
+                        }
+                        write = !write;
+                    }
+                }, periodMicros, periodMicros, TimeUnit.MICROSECONDS);
+            }
+        }
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSec));
+
+        long allocatedBefore = allocatedBytes();
+        long[] gcBefore = gcCountAndTime();
+        measureStartNanos = System.nanoTime();
+        measuring = true;
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(durationSec));
+
+        measuring = false;
+        long elapsedNanos = System.nanoTime() - measureStartNanos;
+        long allocatedAfter = allocatedBytes();
+        long[] gcAfter = gcCountAndTime();
+
+        workload.shutdownNow();
+        JSONObject pluginMetrics = getPluginMetrics();
+        plugin.onDestroy();
+
+        double elapsedSec = elapsedNanos / 1e9;
+
+        JSONObject report = new JSONObject();
+        report.put("label", option("label", ""));
+
+        JSONObject config = new JSONObject();
+        config.put("devices", devices);
+        config.put("notificationHz", hz);
+        config.put("payloadSize", payloadSize);
+        config.put("readWriteHz", readWriteHz);
+        config.put("warmupSec", warmupSec);
+        config.put("durationSec", durationSec);
+        config.put("latencyMs", Long.parseLong(option("latencyMs", "10")));
+        config.put("jitterMs", Long.parseLong(option("jitterMs", "5")));
+        config.put("failureRate", Double.parseDouble(option("failureRate", "0")));
+        report.put("config", config);
+
+        JSONObject throughput = new JSONObject();
+        throughput.put("notificationsPerSecond", notifications.get() / elapsedSec);
+        throughput.put("expectedNotificationsPerSecond", devices * hz);
+        throughput.put("bytesPerSecond", notifications.get() * payloadSize / elapsedSec);
+        throughput.put("readsPerSecond", readLatency.size() / elapsedSec);
+        throughput.put("writesPerSecond", writeLatency.size() / elapsedSec);
+        report.put("throughput", throughput);
+
+        report.put("notificationLatency", notificationLatency.toJS());
+        report.put("readLatency", readLatency.toJS());
+        report.put("writeLatency", writeLatency.toJS());
+
+        report.put("notifications", notifications.get());
+        report.put("droppedNotifications", dropped.get());
+        report.put("readWriteErrors", readWriteErrors.get());
+
+        JSONObject memory = new JSONObject();
+        memory.put("allocatedBytesPerSecond",
+                allocatedBefore < 0 ? -1 : (allocatedAfter - allocatedBefore) / elapsedSec);
+        memory.put("gcCount", gcAfter[0] - gcBefore[0]);
+        memory.put("gcTimeMs", gcAfter[1] - gcBefore[1]);
+        report.put("memory", memory);
+
+        report.put("pluginMetrics", pluginMetrics);
+        return report;
+    }
+
+    private JSONArray createPeripherals() throws JSONException {
+        JSONObject profile = new JSONObject();
+        profile.put("latencyMs", Long.parseLong(option("latencyMs", "10")));
+        profile.put("jitterMs", Long.parseLong(option("jitterMs", "5")));
+        profile.put("failureRate", Double.parseDouble(option("failureRate", "0")));
+        profile.put("notificationHz", hz);
+        profile.put("notificationSize", payloadSize);
+        profile.put("connectLatencyMs", 10);
+
+        JSONArray peripherals = new JSONArray();
+        for (int i = 0; i < devices; i++) {
+            JSONObject notify = new JSONObject();
+            notify.put("uuid", NOTIFY_UUID);
+            notify.put("properties", new JSONArray(Arrays.asList("notify")));
+
+            JSONObject readWrite = new JSONObject();
+            readWrite.put("uuid", READ_WRITE_UUID);
+            readWrite.put("properties", new JSONArray(Arrays.asList("read", "write")));
+            readWrite.put("value", Base64.encodeToString(new byte[payloadSize], Base64.NO_WRAP));
+
+            JSONObject service = new JSONObject();
+            service.put("uuid", SERVICE_UUID);
+            service.put("characteristics", new JSONArray(Arrays.asList(notify, readWrite)));
+
+            JSONObject peripheral = new JSONObject();
+            peripheral.put("id", deviceId(i));
+            peripheral.put("name", "Simulated " + i);
+            peripheral.put("services", new JSONArray(Arrays.asList(service)));
+            peripheral.put("profile", profile);
+            peripherals.put(peripheral);
+        }
+        return peripherals;
+    }
+
+    private void connect(List<String> deviceIds) throws Exception {
+        final CountDownLatch connected = new CountDownLatch(deviceIds.size());
+        final AtomicLong failures = new AtomicLong();
+
+        for (String deviceId : deviceIds) {
+            plugin.execute("connectToDevice", new JSONArray().put(deviceId).put(new JSONObject()),
+                    new StubCallbackContext() {
+                        @Override
+                        void onResult(PluginResult result, boolean ok) {
+                            if (!ok) {
+                                failures.incrementAndGet();
+                            }
+                            connected.countDown();
+                        }
+                    });
+        }
+
+        if (!connected.await(SETUP_TIMEOUT_SEC, TimeUnit.SECONDS) || failures.get() > 0) {
+            throw new IllegalStateException("Could not connect the simulated peripherals");
+        }
+    }
+
+    private void monitor(final String deviceId) throws JSONException {
+        JSONObject txOptions = new JSONObject().put("binary", true);
+        JSONArray args = new JSONArray()
+                .put(deviceId).put(SERVICE_UUID).put(NOTIFY_UUID).put("monitor-" + deviceId).put(txOptions);
+
+        plugin.execute("monitorCharacteristic", args, new StubCallbackContext() {
+            private long lastSequence = -1;
+
+            @Override
+            void onResult(PluginResult result, boolean ok) {
+                if (!ok) {
+                    return;
+                }
+
+                long receivedNanos = System.nanoTime();
+                byte[] payload = binaryPayload(result);
+                long sentAtNanos = SimulatedPeripheral.getSentAtNanos(payload);
+                if (sentAtNanos < 0) {
+                    return;
+                }
+                long sequence = ByteBuffer.wrap(payload).getInt(8) & 0xffffffffL;
+
+                // the notifications of one device are delivered in order
+                synchronized (this) {
+                    if (measuring && sentAtNanos >= measureStartNanos) {
+                        notifications.incrementAndGet();
+                        notificationLatency.add(receivedNanos - sentAtNanos);
+                        if (lastSequence >= 0 && sequence > lastSequence + 1) {
+                            dropped.addAndGet(sequence - lastSequence - 1);
+                        }
+                    }
+                    lastSequence = sequence;
+                }
+            }
+        });
+    }
+
+    private void read(String deviceId) {
+        final long startNanos = System.nanoTime();
+        JSONArray args = new JSONArray()
+                .put(deviceId).put(SERVICE_UUID).put(READ_WRITE_UUID).put(nextTransactionId()).put(new JSONObject());
+        execute("readCharacteristic", args, readLatency, startNanos);
+    }
+
+    private void write(String deviceId) {
+        final long startNanos = System.nanoTime();
+        JSONArray args = new JSONArray()
+                .put(deviceId).put(SERVICE_UUID).put(READ_WRITE_UUID)
+                .put(Base64.encodeToString(new byte[payloadSize], Base64.NO_WRAP))
+                .put(true)
+                .put(nextTransactionId())
+                .put(new JSONObject());
+        execute("writeCharacteristic", args, writeLatency, startNanos);
+    }
+
+    private void execute(String action, JSONArray args, final Samples latency, final long startNanos) {
+        try {
+            plugin.execute(action, args, new StubCallbackContext() {
+                @Override
+                void onResult(PluginResult result, boolean ok) {
+                    if (!measuring || startNanos < measureStartNanos) {
+                        return;
+                    }
+                    if (ok) {
+                        latency.add(System.nanoTime() - startNanos);
+                    } else {
+                        readWriteErrors.incrementAndGet();
+                    }
+                }
+            });
+        } catch (JSONException ex) {
+            readWriteErrors.incrementAndGet();
+        }
+    }
+
+    private JSONObject getPluginMetrics() throws Exception {
+        final CountDownLatch received = new CountDownLatch(1);
+        final JSONObject[] metrics = new JSONObject[1];
+
+        plugin.execute("getMetrics", new JSONArray(), new StubCallbackContext() {
+            @Override
+            void onResult(PluginResult result, boolean ok) {
+                try {
+                    metrics[0] = new JSONObject(result.getMessage());
+                } catch (JSONException ex) {
+                    metrics[0] = new JSONObject();
+                }
+                received.countDown();
+            }
+        });
+
+        received.await(SETUP_TIMEOUT_SEC, TimeUnit.SECONDS);
+        return metrics[0] != null ? metrics[0] : new JSONObject();
+    }
+
+    // the value is the last part: (metadata, value) for the first notification, value alone after
+    private static byte[] binaryPayload(PluginResult result) {
+        PluginResult value = result;
+        if (result.getMessageType() == PluginResult.MESSAGE_TYPE_MULTIPART) {
+            value = result.getMultipartMessage(result.getMultipartMessagesSize() - 1);
+        }
+        if (value.getMessageType() != PluginResult.MESSAGE_TYPE_ARRAYBUFFER &&
+                value.getMessageType() != PluginResult.MESSAGE_TYPE_BINARYSTRING) {
+            return null;
+        }
+        return Base64.decode(value.getMessage(), Base64.DEFAULT);
+    }
+
+    private String nextTransactionId() {
+        return "rw-" + transactionIds.incrementAndGet();
+    }
+
+    private String option(String name, String defaultValue) {
+        String value = options.get(name);
+        return value != null ? value : defaultValue;
+    }
+
+    private static String deviceId(int index) {
+        return String.format(Locale.US, "02:00:00:00:%02X:%02X", (index >> 8) & 0xff, index & 0xff);
+    }
+
+    // -1 when the JVM cannot tell
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        if (!allocations.isThreadAllocatedMemorySupported()) {
+            return -1;
+        }
+
+        long total = 0;
+        for (long allocated : allocations.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (allocated > 0) {
+                total += allocated;
+            }
+        }
+        return total;
+    }
+
+    private static long[] gcCountAndTime() {
+        long count = 0;
+        long timeMs = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            timeMs += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[] { count, timeMs };
+    }
+
+    /**
+     * Callback context without a WebView, results are handed to onResult.
+     */
+    private abstract static class StubCallbackContext extends CallbackContext {
+
+        StubCallbackContext() {
+            super("loadtest", null);
+        }
+
+        @Override
+        public void sendPluginResult(PluginResult pluginResult) {
+            onResult(pluginResult, pluginResult.getStatus() == PluginResult.Status.OK.ordinal());
+        }
+
+        abstract void onResult(PluginResult result, boolean ok);
+    }
+
+    /**
+     * Every latency of the measurement window, kept raw so the tail percentiles are exact.
+     */
+    private static class Samples {
+
+        private long[] nanos = new long[1024];
+        private int size;
+
+        synchronized void add(long value) {
+            if (size == nanos.length) {
+                nanos = Arrays.copyOf(nanos, size * 2);
+            }
+            nanos[size++] = value;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized JSONObject toJS() throws JSONException {
+            long[] sorted = Arrays.copyOf(nanos, size);
+            Arrays.sort(sorted);
+
+            JSONObject jsObject = new JSONObject();
+            jsObject.put("count", size);
+            jsObject.put("p50Ms", percentileMs(sorted, 0.5));
+            jsObject.put("p99Ms", percentileMs(sorted, 0.99));
+            jsObject.put("p999Ms", percentileMs(sorted, 0.999));
+            jsObject.put("maxMs", size == 0 ? 0 : sorted[size - 1] / 1e6);
+            return jsObject;
+        }
+
+        private static double percentileMs(long[] sorted, double quantile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(sorted.length * quantile) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+        }
+    }
+}
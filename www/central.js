@@ -2,19 +2,97 @@
 
 var argscheck = require('cordova/argscheck');
 var exec = require('cordova/exec');
+var base64 = require('cordova/base64');
 
 var PLUGIN_NAME = 'CentralPlugin';
 var getValue = argscheck.getValue;
 
+// only the Android side sends values as (metadata, ArrayBuffer) results
+var BINARY_SUPPORTED = require('cordova').platformId === 'android';
+
 function isNotAcceptable(val) {
     return val === undefined || val === null || val === '';
 }
 
+// Options shared by the characteristic transactions (read, write and monitor)
+function transactionOptions(options) {
+    return {
+        // the value comes as an ArrayBuffer next to the metadata instead of a Base64 string
+        // inside of it. The bridge still Base64 encodes the bytes on the way, only the JSON
+        // wrapping is saved. Ignored, and the regular result is delivered, off Android.
+        binary: BINARY_SUPPORTED && getValue(options.binary, false),
+        // monitorCharacteristic only, see below
+        batchWindowMs: getValue(options.batchWindowMs, 0),
+        bufferSize: getValue(options.bufferSize, 256),
+        overflow: getValue(options.overflow, 'dropOldest'),
+        // monitorCharacteristic only, keeps the latest value and delivers it
+        // at most once every conflateMs (e.g. 16 for 60 fps)
+        conflateMs: getValue(options.conflateMs, 0),
+        // 'interactive', 'normal' or 'bulk', operations of a device are started by
+        // priority, a long write lets higher priority operations in between its chunks
+        priority: getValue(options.priority, 'normal'),
+        // monitorCharacteristic only, the static metadata (uuid, flags, deviceUUID and
+        // serviceUUID) only comes with the first notification or batch
+        omitMetadata: getValue(options.omitMetadata, false),
+        // the transaction fails with a timeout error (code 510) when it gets no answer
+        // within timeoutMs (for a long write: per chunk, for readCharacteristics: per read,
+        // reported in its slot, for a monitor: to enable the notification). 0 disables it, by default the one of setTransactionTimeout applies.
+        timeoutMs: getValue(options.timeoutMs, null)
+    };
+}
+
+// Typed array views are sent as the ArrayBuffer they cover
+function toArrayBuffer(value) {
+    if (ArrayBuffer.isView && ArrayBuffer.isView(value)) {
+        return value.buffer.slice(value.byteOffset, value.byteOffset + value.byteLength);
+    }
+    return value;
+}
+
 var Central = {
 
     startDeviceScan: function(options, successCallback, errorCallback) {
-        var uuids = null;
-        var args = [uuids];
+        options = options || {};
+
+        var uuids = getValue(options.serviceUUIDs, null);
+        // when batchWindowMs or batchSize is set, the success callback
+        // receives an array of scan results instead of a single one.
+        // When deduplicate is set, a device is only reported again once its
+        // smoothed rssi moved by more than rssiThreshold or after minIntervalMs
+        var scanOptions = {
+            batchWindowMs: getValue(options.batchWindowMs, 0),
+            batchSize: getValue(options.batchSize, 0),
+            deduplicate: getValue(options.deduplicate, false),
+            rssiSmoothing: getValue(options.rssiSmoothing, 0.3),
+            rssiThreshold: getValue(options.rssiThreshold, 5),
+            minIntervalMs: getValue(options.minIntervalMs, 1000),
+            // adds the decoded advertising data (flags, localName, txPowerLevel,
+            // serviceUUIDs, serviceData, manufacturerData) to every scan result
+            advertisement: getValue(options.advertisement, false),
+            // size of the native registry queried with getDiscoveredDevices, 0 disables it
+            discoveredDevicesCapacity: getValue(options.discoveredDevicesCapacity, 256)
+        };
+
+        // native filters, the advertisements they reject never cross the bridge.
+        // manufacturerData and manufacturerDataMask are Base64 strings or ArrayBuffers
+        // compared to the bytes following the company ID.
+        var filters = ['minRssi', 'namePrefix', 'nameRegex', 'manufacturerId'];
+        filters.forEach(function(filter) {
+            if (!isNotAcceptable(options[filter])) {
+                scanOptions[filter] = options[filter];
+            }
+        });
+        ['manufacturerData', 'manufacturerDataMask'].forEach(function(filter) {
+            var value = toArrayBuffer(options[filter]);
+            if (value instanceof ArrayBuffer) {
+                value = base64.fromArrayBuffer(value);
+            }
+            if (!isNotAcceptable(value)) {
+                scanOptions[filter] = value;
+            }
+        });
+
+        var args = [uuids, scanOptions];
         exec(successCallback, errorCallback, PLUGIN_NAME, 'startDeviceScan', args);
     },
 
@@ -33,7 +111,13 @@ var Central = {
             throw new Error('Invalid arguments !');
         }
 
-        var args = [deviceId];
+        // optional, applied right after the connection is established
+        var connectionOptions = {
+            mtu: getValue(options.mtu, 0),
+            connectionPriority: getValue(options.connectionPriority, null)
+        };
+
+        var args = [deviceId, connectionOptions];
         exec(successCallback, errorCallback, PLUGIN_NAME, 'connectToDevice', args);
     },
 
@@ -95,8 +179,47 @@ var Central = {
             throw new Error('Invalid arguments !');
         }
 
-        var args = [deviceId, serviceUUID, charUUID, transactionId];
-        exec(successCallback, errorCallback, PLUGIN_NAME, 'monitorCharacteristic', args);
+        var txOptions = transactionOptions(options);
+        var onNotification = successCallback;
+
+        // With batchWindowMs the notifications are buffered natively (up to bufferSize,
+        // overflow is one of 'dropOldest' (default), 'dropNewest' or 'block', which keeps
+        // up to 4 * bufferSize more packets and delivers them with the following windows)
+        // and delivered once per window. What is still buffered when the transaction is
+        // cancelled is delivered as a last batch. The callback receives the metadata with a values array of Base64
+        // strings, or (metadata, [ArrayBuffer]) in binary mode. dropped / totalDropped
+        // report how many packets the overflow policy discarded.
+        //
+        // Otherwise, in binary mode the metadata only comes with the first notification,
+        // the following ones carry the ArrayBuffer alone.
+        if (txOptions.batchWindowMs > 0 && txOptions.binary) {
+            onNotification = function(metadata) {
+                successCallback(metadata, Array.prototype.slice.call(arguments, 1));
+            };
+        } else if (txOptions.binary) {
+            var metadata = null;
+            onNotification = function(first, second) {
+                if (second !== undefined) {
+                    metadata = first;
+                    successCallback(metadata, second);
+                } else {
+                    successCallback(metadata, first);
+                }
+            };
+        }
+
+        var args = [deviceId, serviceUUID, charUUID, transactionId, txOptions];
+        exec(onNotification, errorCallback, PLUGIN_NAME, 'monitorCharacteristic', args);
+    },
+
+    // default timeout of the transactions that do not set timeoutMs, 0 (the initial
+    // value) for none
+    setTransactionTimeout: function(timeoutMs, successCallback, errorCallback) {
+        if (typeof timeoutMs !== 'number' || timeoutMs < 0) {
+            throw new Error('Invalid arguments !');
+        }
+
+        exec(successCallback, errorCallback, PLUGIN_NAME, 'setTransactionTimeout', [timeoutMs]);
     },
 
     cancelTransaction: function(transactionId, successCallback, errorCallback) {
@@ -121,16 +244,34 @@ var Central = {
             throw new Error('Invalid arguments !');
         }
 
-        var args = [deviceId, serviceUUID, charUUID, transactionId];
+        var args = [deviceId, serviceUUID, charUUID, transactionId, transactionOptions(options)];
         exec(successCallback, errorCallback, PLUGIN_NAME, 'readCharacteristic', args);
     },
 
+    // Reads several characteristics of a device in one call. options.characteristics
+    // is an array of { serviceUUID, charUUID }, the success callback receives an array
+    // with one entry per characteristic, failed reads carry an error instead of a value.
+    readCharacteristics: function(options, successCallback, errorCallback) {
+        var deviceId = getValue(options.deviceId, undefined);
+        var characteristics = getValue(options.characteristics, undefined);
+        var transactionId = getValue(options.transactionId, undefined);
+
+        if (isNotAcceptable(deviceId) ||
+            isNotAcceptable(transactionId) ||
+            !Array.isArray(characteristics)) {
+            throw new Error('Invalid arguments !');
+        }
+
+        var args = [deviceId, characteristics, transactionId, transactionOptions(options)];
+        exec(successCallback, errorCallback, PLUGIN_NAME, 'readCharacteristics', args);
+    },
+
     writeCharacteristic: function(options, successCallback, errorCallback) {
         var deviceId = getValue(options.deviceId, undefined);
         var serviceUUID = getValue(options.serviceUUID, undefined);
         var charUUID = getValue(options.charUUID, undefined);
         var transactionId = getValue(options.transactionId, undefined);
-        var value = getValue(options.value, undefined);
+        var value = toArrayBuffer(getValue(options.value, undefined));
         var response = getValue(options.withResponse, false);
 
         if (isNotAcceptable(deviceId) ||
@@ -141,10 +282,151 @@ var Central = {
             throw new Error('Invalid arguments !');
         }
 
-        var args = [deviceId, serviceUUID, charUUID, value, response, transactionId];
+        var args = [deviceId, serviceUUID, charUUID, value, response, transactionId, transactionOptions(options)];
         exec(successCallback, errorCallback, PLUGIN_NAME, 'writeCharacteristic', args);
     },
 
+    // Writes a value larger than the MTU by splitting it natively in chunks
+    // (options.chunkSize, MTU - 3 by default). progressCallback receives
+    // { bytesWritten, totalBytes } as the chunks are written.
+    writeCharacteristicLong: function(options, successCallback, errorCallback, progressCallback) {
+        var deviceId = getValue(options.deviceId, undefined);
+        var serviceUUID = getValue(options.serviceUUID, undefined);
+        var charUUID = getValue(options.charUUID, undefined);
+        var transactionId = getValue(options.transactionId, undefined);
+        var value = toArrayBuffer(getValue(options.value, undefined));
+        var response = getValue(options.withResponse, false);
+
+        if (isNotAcceptable(deviceId) ||
+            isNotAcceptable(serviceUUID) ||
+            isNotAcceptable(charUUID) ||
+            isNotAcceptable(value) ||
+            isNotAcceptable(transactionId)) {
+            throw new Error('Invalid arguments !');
+        }
+
+        var txOptions = transactionOptions(options);
+        txOptions.chunkSize = getValue(options.chunkSize, 0);
+
+        var onResult = function(result) {
+            if (result && result.progress) {
+                if (progressCallback) {
+                    progressCallback(result.progress);
+                }
+            } else {
+                successCallback(result);
+            }
+        };
+
+        var args = [deviceId, serviceUUID, charUUID, value, response, transactionId, txOptions];
+        exec(onResult, errorCallback, PLUGIN_NAME, 'writeCharacteristicLong', args);
+    },
+
+    requestMtu: function(options, successCallback, errorCallback) {
+        var deviceId = getValue(options.deviceId, undefined);
+        var mtu = getValue(options.mtu, undefined);
+
+        if (isNotAcceptable(deviceId) || isNotAcceptable(mtu)) {
+            throw new Error('Invalid arguments !');
+        }
+
+        var args = [deviceId, mtu];
+        exec(successCallback, errorCallback, PLUGIN_NAME, 'requestMtu', args);
+    },
+
+    getMtu: function(options, successCallback, errorCallback) {
+        var deviceId = getValue(options.deviceId, undefined);
+
+        if (isNotAcceptable(deviceId)) {
+            throw new Error('Invalid arguments !');
+        }
+
+        var args = [deviceId];
+        exec(successCallback, errorCallback, PLUGIN_NAME, 'getMtu', args);
+    },
+
+    // connectionPriority is one of 'high', 'balanced' or 'lowPower'
+    requestConnectionPriority: function(options, successCallback, errorCallback) {
+        var deviceId = getValue(options.deviceId, undefined);
+        var connectionPriority = getValue(options.connectionPriority, undefined);
+
+        if (isNotAcceptable(deviceId) || isNotAcceptable(connectionPriority)) {
+            throw new Error('Invalid arguments !');
+        }
+
+        var args = [deviceId, connectionPriority];
+        exec(successCallback, errorCallback, PLUGIN_NAME, 'requestConnectionPriority', args);
+    },
+
+    // Latency histograms per action, queue wait, GATT and serialization time, byte,
+    // notification and error counters. With options.intervalMs the success callback
+    // keeps receiving a snapshot every interval, options.reset clears the metrics
+    // after each snapshot.
+    getMetrics: function(options, successCallback, errorCallback) {
+        options = options || {};
+        var args = [{
+            intervalMs: getValue(options.intervalMs, 0),
+            reset: getValue(options.reset, false)
+        }];
+        exec(successCallback, errorCallback, PLUGIN_NAME, 'getMetrics', args);
+    },
+
+    // Runs several actions with a single bridge crossing. commands is an array of
+    // { id, action, args } where args are the native arguments of the action (see the
+    // methods above). resultCallback receives { id, ok, keepCallback, value } for every
+    // result of every command, value being an array when the result has several parts.
+    // With options.sequential a command only starts once the previous one sent its first
+    // result, the commands following a failed one are rejected as cancelled.
+    // monitorDeviceDisconnect is rejected in a sequential batch, it has no first result
+    // until a device disconnects.
+    executeBatch: function(commands, options, resultCallback, errorCallback) {
+        if (!Array.isArray(commands)) {
+            throw new Error('Invalid arguments !');
+        }
+        if (commands.length === 0) {
+            return;
+        }
+
+        options = options || {};
+        var onResult = function(envelope) {
+            var parts = Array.prototype.slice.call(arguments, 1);
+            resultCallback({
+                id: envelope.id,
+                ok: envelope.ok,
+                keepCallback: envelope.keepCallback,
+                value: parts.length === 1 ? parts[0] : parts
+            });
+        };
+
+        var args = [commands, { sequential: getValue(options.sequential, false) }];
+        exec(onResult, errorCallback, PLUGIN_NAME, 'executeBatch', args);
+    },
+
+    // devices seen by the scans, most recently seen first unless options.sortBy is
+    // 'rssi' (smoothed rssi, strongest first) or 'name'. They can be filtered with
+    // namePrefix, minRssi (smoothed), maxAgeMs and serviceUUID (advertised), and
+    // limited to the first options.limit devices. With options.advertisement every
+    // device carries its decoded advertising data.
+    getDiscoveredDevices: function(options, successCallback, errorCallback) {
+        options = options || {};
+        var query = {
+            sortBy: getValue(options.sortBy, 'lastSeen'),
+            limit: getValue(options.limit, 0),
+            advertisement: getValue(options.advertisement, false)
+        };
+        ['namePrefix', 'minRssi', 'maxAgeMs', 'serviceUUID'].forEach(function(filter) {
+            if (!isNotAcceptable(options[filter])) {
+                query[filter] = options[filter];
+            }
+        });
+        exec(successCallback, errorCallback, PLUGIN_NAME, 'getDiscoveredDevices', [query]);
+    },
+
+    // depth and wait times of the operation queue of every known device
+    getOperationQueues: function(successCallback, errorCallback) {
+        exec(successCallback, errorCallback, PLUGIN_NAME, 'getOperationQueues', []);
+    },
+
     getState: function(successCallback, errorCallback) {
         var args = [];
         exec(successCallback, errorCallback, PLUGIN_NAME, 'getState', args);